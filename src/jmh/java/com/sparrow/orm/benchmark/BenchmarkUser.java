@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.benchmark;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import javax.persistence.Column;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * 基准测试实体 含一个宽文本列
+ *
+ * @author harry
+ */
+@Table(name = "benchmark_user", schema = H2Database.SCHEMA)
+public class BenchmarkUser {
+    private Long userId;
+    private String userName;
+    private String email;
+    private Integer status;
+    private BigDecimal balance;
+    private Timestamp gmtCreate;
+    private String profile;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "user_id", columnDefinition = "bigint(11)", updatable = false)
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    @Column(name = "user_name", columnDefinition = "varchar(64)")
+    public String getUserName() {
+        return userName;
+    }
+
+    public void setUserName(String userName) {
+        this.userName = userName;
+    }
+
+    @Column(name = "email", columnDefinition = "varchar(128)")
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
+    @Column(name = "status", columnDefinition = "tinyint(1)")
+    public Integer getStatus() {
+        return status;
+    }
+
+    public void setStatus(Integer status) {
+        this.status = status;
+    }
+
+    @Column(name = "balance", columnDefinition = "decimal(12,2)")
+    public BigDecimal getBalance() {
+        return balance;
+    }
+
+    public void setBalance(BigDecimal balance) {
+        this.balance = balance;
+    }
+
+    @Column(name = "gmt_create", columnDefinition = "timestamp")
+    public Timestamp getGmtCreate() {
+        return gmtCreate;
+    }
+
+    public void setGmtCreate(Timestamp gmtCreate) {
+        this.gmtCreate = gmtCreate;
+    }
+
+    @Column(name = "profile", columnDefinition = "text")
+    public String getProfile() {
+        return profile;
+    }
+
+    public void setProfile(String profile) {
+        this.profile = profile;
+    }
+
+    public static BenchmarkUser sample(long i) {
+        BenchmarkUser user = new BenchmarkUser();
+        user.setUserId(i);
+        user.setUserName("user-" + i);
+        user.setEmail("user-" + i + "@sparrowzoo.com");
+        user.setStatus((int) (i % 2));
+        user.setBalance(BigDecimal.valueOf(i * 100 + 99, 2));
+        user.setGmtCreate(new Timestamp(1700000000000L + i * 1000));
+        StringBuilder profile = new StringBuilder(2048);
+        while (profile.length() < 2000) {
+            profile.append("profile of user ").append(i).append(';');
+        }
+        user.setProfile(profile.toString());
+        return user;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.benchmark;
+
+import com.sparrow.enums.DATABASE_SPLIT_STRATEGY;
+import com.sparrow.orm.JDBCTemplate;
+import com.sparrow.orm.Parameter;
+import com.sparrow.orm.PrepareORM;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JDBCTemplate.bindParameter 一行实体参数的绑定 (私有方法 经MethodHandle调用)
+ *
+ * @author harry
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindParameterBenchmark {
+    private static final MethodHandle BIND_PARAMETER;
+
+    static {
+        try {
+            Method method = JDBCTemplate.class.getDeclaredMethod("bindParameter", PreparedStatement.class, Parameter.class, int.class);
+            method.setAccessible(true);
+            BIND_PARAMETER = MethodHandles.lookup().unreflect(method);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private JDBCTemplate jdbcTemplate;
+
+    private Connection connection;
+
+    private PreparedStatement preparedStatement;
+
+    private List<Parameter> parameters;
+
+    @Setup
+    public void setup() throws SQLException {
+        this.jdbcTemplate = JDBCTemplate.getInstance(H2Database.SCHEMA, DATABASE_SPLIT_STRATEGY.DEFAULT);
+        this.connection = DriverManager.getConnection(H2Database.URL, "sa", "");
+        this.preparedStatement = this.connection.prepareStatement("select ?,?,?,?,?,?");
+        PrepareORM<BenchmarkUser> prepareORM = new PrepareORM<BenchmarkUser>(BenchmarkUser.class, null);
+        this.parameters = prepareORM.insert(BenchmarkUser.sample(1)).getParameters();
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        this.preparedStatement.close();
+        this.connection.close();
+    }
+
+    @Benchmark
+    public void bindParameter() throws Throwable {
+        for (int i = 0; i < this.parameters.size(); i++) {
+            BIND_PARAMETER.invokeExact(this.jdbcTemplate, this.preparedStatement, this.parameters.get(i), i + 1);
+        }
+    }
+}
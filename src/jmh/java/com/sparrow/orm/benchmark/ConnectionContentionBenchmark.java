@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.benchmark;
+
+import com.sparrow.enums.DATABASE_SPLIT_STRATEGY;
+import com.sparrow.orm.JDBCTemplate;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 共享JDBCTemplate上的连接获取竞争 吞吐应随线程数增长
+ * <p>
+ * 查询本身极轻，耗时主要在getConnection/release路径
+ *
+ * @author harry
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConnectionContentionBenchmark {
+    private Connection keepAlive;
+
+    private JDBCTemplate jdbcTemplate;
+
+    @Setup
+    public void setup() throws SQLException {
+        this.keepAlive = H2Database.open(0);
+        this.jdbcTemplate = JDBCTemplate.getInstance(H2Database.SCHEMA, DATABASE_SPLIT_STRATEGY.DEFAULT);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        this.keepAlive.close();
+    }
+
+    private boolean select() throws SQLException {
+        ResultSet rs = this.jdbcTemplate.executeQuery("select 1");
+        try {
+            return rs.next();
+        } finally {
+            this.jdbcTemplate.release(rs);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean threads1() throws SQLException {
+        return this.select();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean threads4() throws SQLException {
+        return this.select();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public boolean threads16() throws SQLException {
+        return this.select();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public boolean threads64() throws SQLException {
+        return this.select();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.benchmark;
+
+import com.sparrow.orm.query.BooleanCriteria;
+import com.sparrow.orm.query.Criteria;
+import com.sparrow.orm.query.sql.impl.criteria.processor.SqlCriteriaProcessorImpl;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SqlCriteriaProcessorImpl.where 条件树渲染
+ *
+ * @author harry
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CriteriaBenchmark {
+    private SqlCriteriaProcessorImpl criteriaProcessor;
+    /**
+     * status=? and user_id in(...)
+     */
+    private BooleanCriteria simple;
+    /**
+     * 列表页常见的多条件 含嵌套or
+     */
+    private BooleanCriteria nested;
+
+    @Setup
+    public void setup() {
+        this.criteriaProcessor = new SqlCriteriaProcessorImpl();
+        List<Long> userIds = new ArrayList<Long>();
+        for (long i = 1; i <= 20; i++) {
+            userIds.add(i);
+        }
+        this.simple = BooleanCriteria.criteria(Criteria.field("benchmarkUser.status").equal(1))
+            .and(Criteria.field("benchmarkUser.userId").in(userIds));
+
+        BooleanCriteria keyword = BooleanCriteria.criteria(Criteria.field("benchmarkUser.userName").startWith("user-1"))
+            .or(Criteria.field("benchmarkUser.email").contain("sparrow"));
+        this.nested = BooleanCriteria.criteria(Criteria.field("benchmarkUser.status").equal(1))
+            .and(Criteria.field("benchmarkUser.gmtCreate").greaterThanEqual(new Timestamp(1700000000000L)))
+            .and(Criteria.field("benchmarkUser.gmtCreate").lessThan(new Timestamp(1800000000000L)))
+            .and(Criteria.field("benchmarkUser.balance").greaterThan(0))
+            .and(Criteria.field("benchmarkUser.userId").in(userIds))
+            .and(keyword);
+    }
+
+    @Benchmark
+    public Object simpleWhere() {
+        return this.criteriaProcessor.where(this.simple);
+    }
+
+    @Benchmark
+    public Object nestedWhere() {
+        return this.criteriaProcessor.where(this.nested);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.benchmark;
+
+import com.sparrow.orm.query.BooleanCriteria;
+import com.sparrow.orm.query.Criteria;
+import com.sparrow.orm.query.SearchCriteria;
+import com.sparrow.orm.template.impl.DBORMTemplate;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * DBORMTemplate.getList 端到端(条件渲染,执行,映射) 内存H2
+ *
+ * @author harry
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GetListBenchmark {
+    private Connection keepAlive;
+
+    private DBORMTemplate<BenchmarkUser, Long> template;
+
+    private SearchCriteria criteria;
+
+    @Setup
+    public void setup() throws SQLException {
+        this.keepAlive = H2Database.open(1000);
+        this.template = new DBORMTemplate<BenchmarkUser, Long>(BenchmarkUser.class);
+        this.criteria = new SearchCriteria();
+        this.criteria.setWhere(BooleanCriteria.criteria(Criteria.field("benchmarkUser.status").equal(1)));
+        this.criteria.setPageSize(100);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        this.keepAlive.close();
+    }
+
+    @Benchmark
+    public List<BenchmarkUser> getList() {
+        return this.template.getList(this.criteria);
+    }
+}
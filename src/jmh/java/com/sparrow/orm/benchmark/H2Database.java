@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 内存H2库(MySQL兼容模式)的建表及数据准备
+ * <p>
+ * ORM通过sparrow数据源访问，schema为benchmark的数据源配置见src/jmh/resources/benchmark_default.properties
+ *
+ * @author harry
+ */
+public final class H2Database {
+    public static final String SCHEMA = "benchmark";
+
+    public static final String URL = "jdbc:h2:mem:benchmark;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    private H2Database() {
+    }
+
+    /**
+     * 连接在基准测试期间保持打开 保证内存库不被回收
+     */
+    public static Connection open(int rows) throws SQLException {
+        Connection connection = DriverManager.getConnection(URL, "sa", "");
+        Statement statement = connection.createStatement();
+        try {
+            statement.execute("drop table if exists benchmark_user");
+            statement.execute("create table benchmark_user(" +
+                "user_id bigint auto_increment primary key," +
+                "user_name varchar(64)," +
+                "email varchar(128)," +
+                "status tinyint," +
+                "balance decimal(12,2)," +
+                "gmt_create timestamp," +
+                "profile text)");
+            statement.execute("create index idx_status on benchmark_user(status)");
+        } finally {
+            statement.close();
+        }
+        PreparedStatement insert = connection.prepareStatement("insert into benchmark_user" +
+            "(user_name,email,status,balance,gmt_create,profile) values(?,?,?,?,?,?)");
+        try {
+            for (int i = 1; i <= rows; i++) {
+                BenchmarkUser user = BenchmarkUser.sample(i);
+                insert.setString(1, user.getUserName());
+                insert.setString(2, user.getEmail());
+                insert.setInt(3, user.getStatus());
+                insert.setBigDecimal(4, user.getBalance());
+                insert.setTimestamp(5, user.getGmtCreate());
+                insert.setString(6, user.getProfile());
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        } finally {
+            insert.close();
+        }
+        return connection;
+    }
+}
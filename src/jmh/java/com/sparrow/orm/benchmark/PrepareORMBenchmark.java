@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.benchmark;
+
+import com.sparrow.orm.PrepareORM;
+import com.sparrow.orm.query.sql.impl.criteria.processor.SqlCriteriaProcessorImpl;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+import org.h2.tools.SimpleResultSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * PrepareORM insert/update参数构建及内存结果集的行映射
+ *
+ * @author harry
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrepareORMBenchmark {
+    private static final int ROWS = 100;
+
+    private PrepareORM<BenchmarkUser> prepareORM;
+
+    private BenchmarkUser user;
+
+    private SimpleResultSet resultSet;
+
+    @Setup
+    public void setup() {
+        this.prepareORM = new PrepareORM<BenchmarkUser>(BenchmarkUser.class, new SqlCriteriaProcessorImpl());
+        this.user = BenchmarkUser.sample(1);
+        this.resultSet = new SimpleResultSet();
+        this.resultSet.setAutoClose(false);
+        this.resultSet.addColumn("user_id", Types.BIGINT, 19, 0);
+        this.resultSet.addColumn("user_name", Types.VARCHAR, 64, 0);
+        this.resultSet.addColumn("email", Types.VARCHAR, 128, 0);
+        this.resultSet.addColumn("status", Types.TINYINT, 3, 0);
+        this.resultSet.addColumn("balance", Types.DECIMAL, 12, 2);
+        this.resultSet.addColumn("gmt_create", Types.TIMESTAMP, 26, 0);
+        this.resultSet.addColumn("profile", Types.CLOB, Integer.MAX_VALUE, 0);
+        for (int i = 1; i <= ROWS; i++) {
+            BenchmarkUser row = BenchmarkUser.sample(i);
+            this.resultSet.addRow(row.getUserId(), row.getUserName(), row.getEmail(), row.getStatus(),
+                row.getBalance(), row.getGmtCreate(), row.getProfile());
+        }
+    }
+
+    @Benchmark
+    public Object insert() {
+        return this.prepareORM.insert(this.user);
+    }
+
+    @Benchmark
+    public Object update() {
+        return this.prepareORM.update(this.user);
+    }
+
+    /**
+     * 每次映射ROWS行
+     */
+    @Benchmark
+    public void setEntity(Blackhole blackhole) throws SQLException {
+        this.resultSet.beforeFirst();
+        while (this.resultSet.next()) {
+            blackhole.consume(this.prepareORM.setEntity(this.resultSet, null));
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm;
+
+import com.sparrow.cg.MethodAccessor;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 脏字段跟踪 默认关闭
+ * <p>
+ * 实体加载时按对象身份保存持久化字段的快照，update(T)时只写变化的列。
+ * 快照以弱引用持有实体，实体回收后自动清理；快照表为并发map，并行水合时不串行化；
+ * 事务内的更新不刷新快照，回滚后再次更新仍以加载时的值比较
+ *
+ * @author harry
+ */
+public class DirtyTracker<T> {
+    private final MethodAccessor methodAccessor;
+
+    private final String[] properties;
+    /**
+     * 属性名 -> 快照下标
+     */
+    private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+
+    private final Map<IdentityKey, Object[]> snapshots = new ConcurrentHashMap<IdentityKey, Object[]>();
+
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+    private volatile boolean enabled;
+
+    public DirtyTracker(MethodAccessor methodAccessor, EntityManager entityManager) {
+        this.methodAccessor = methodAccessor;
+        List<String> properties = new ArrayList<String>();
+        for (Field field : entityManager.getFieldMap().values()) {
+            if (field == null || !field.isPersistence() || field.isPrimary()) {
+                continue;
+            }
+            this.indexes.put(field.getName(), properties.size());
+            properties.add(field.getName());
+        }
+        this.properties = properties.toArray(new String[0]);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            this.snapshots.clear();
+        }
+    }
+
+    /**
+     * 记录(或刷新)实体当前值为快照
+     *
+     * @param model
+     */
+    public void snapshot(T model) {
+        if (!this.enabled || model == null) {
+            return;
+        }
+        Object[] values = new Object[this.properties.length];
+        for (int i = 0; i < this.properties.length; i++) {
+            values[i] = copyValue(this.methodAccessor.get(model, this.properties[i]));
+        }
+        this.purge();
+        this.snapshots.put(new IdentityKey(model, this.queue), values);
+    }
+
+    /**
+     * @param model
+     * @return 未跟踪时返回null 应全列更新
+     */
+    public Object[] get(T model) {
+        if (!this.enabled || model == null) {
+            return null;
+        }
+        this.purge();
+        return this.snapshots.get(new IdentityKey(model, null));
+    }
+
+    /**
+     * 属性值是否相对快照发生变化 快照中没有的属性视为已变化
+     */
+    public boolean isDirty(Object[] snapshot, String property, Object value) {
+        Integer index = this.indexes.get(property);
+        return index == null || !equalsValue(snapshot[index], value);
+    }
+
+    private void purge() {
+        for (Object key; (key = this.queue.poll()) != null; ) {
+            this.snapshots.remove(key);
+        }
+    }
+
+    /**
+     * 可变值(日期,字节数组)拷贝后保存 避免原地修改无法识别
+     */
+    private static Object copyValue(Object value) {
+        if (value instanceof Date) {
+            return ((Date) value).clone();
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).clone();
+        }
+        return value;
+    }
+
+    private static boolean equalsValue(Object snapshot, Object value) {
+        if (snapshot == value) {
+            return true;
+        }
+        if (snapshot == null || value == null) {
+            return false;
+        }
+        if (snapshot instanceof Date && value instanceof Date) {
+            return ((Date) snapshot).getTime() == ((Date) value).getTime();
+        }
+        if (snapshot instanceof BigDecimal && value instanceof BigDecimal) {
+            return ((BigDecimal) snapshot).compareTo((BigDecimal) value) == 0;
+        }
+        if (snapshot instanceof byte[] && value instanceof byte[]) {
+            return Arrays.equals((byte[]) snapshot, (byte[]) value);
+        }
+        return snapshot.equals(value);
+    }
+
+    /**
+     * 按对象身份比较的弱引用key
+     */
+    private static class IdentityKey extends WeakReference<Object> {
+        private final int hash;
+
+        IdentityKey(Object referent, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof IdentityKey)) {
+                return false;
+            }
+            Object referent = this.get();
+            return referent != null && referent == ((IdentityKey) obj).get();
+        }
+    }
+}
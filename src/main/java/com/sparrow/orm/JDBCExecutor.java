@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 执行阻塞JDBC调用的有界线程池
+ * <p>
+ * 并发数上限应不大于连接池大小，超出的任务排队，队列满时拒绝(RejectedExecutionException)；
+ * 运行时支持虚拟线程(jdk21+)时每个任务一个虚拟线程，以信号量限制并发；
+ * 记录提交、完成、失败、拒绝次数及排队等待时间
+ *
+ * @author harry
+ */
+public class JDBCExecutor {
+    private static Logger logger = LoggerFactory.getLogger(JDBCExecutor.class);
+
+    private static volatile JDBCExecutor defaultExecutor;
+
+    private final ExecutorService executor;
+    /**
+     * 虚拟线程时限制并发 平台线程池时为null
+     */
+    private final Semaphore permits;
+
+    private final int maxConcurrency;
+
+    private final int queueSize;
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder submitted = new LongAdder();
+    /**
+     * 已结束的任务数 包含失败及中断的任务
+     */
+    private final LongAdder finished = new LongAdder();
+    /**
+     * 已开始执行的任务数 即计入waitNanos的任务数
+     */
+    private final LongAdder started = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * @param maxConcurrency 最大并发执行数
+     * @param queueSize      排队上限
+     * @param virtualThreads 运行时支持时是否使用虚拟线程
+     */
+    public JDBCExecutor(int maxConcurrency, int queueSize, boolean virtualThreads) {
+        if (maxConcurrency <= 0 || queueSize < 0) {
+            throw new IllegalArgumentException("max concurrency must be positive");
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.queueSize = queueSize;
+        ExecutorService virtual = virtualThreads ? newVirtualThreadPerTaskExecutor() : null;
+        if (virtual != null) {
+            this.executor = virtual;
+            this.permits = new Semaphore(maxConcurrency);
+        } else {
+            final AtomicInteger index = new AtomicInteger();
+            ThreadPoolExecutor threadPool = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(Math.max(1, queueSize)),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "sparrow-jdbc-" + index.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            threadPool.allowCoreThreadTimeOut(true);
+            this.executor = threadPool;
+            this.permits = null;
+        }
+    }
+
+    /**
+     * 共享执行器 并发数读取系统属性sparrow.jdbc.executor.concurrency(默认16)，
+     * 排队上限sparrow.jdbc.executor.queue(默认1024)
+     *
+     * @return
+     */
+    public static JDBCExecutor getDefault() {
+        if (defaultExecutor == null) {
+            synchronized (JDBCExecutor.class) {
+                if (defaultExecutor == null) {
+                    defaultExecutor = new JDBCExecutor(
+                        Integer.getInteger("sparrow.jdbc.executor.concurrency", 16),
+                        Integer.getInteger("sparrow.jdbc.executor.queue", 1024),
+                        true);
+                }
+            }
+        }
+        return defaultExecutor;
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (Exception e) {
+            logger.warn("virtual threads unavailable", e);
+            return null;
+        }
+    }
+
+    public boolean isVirtualThreads() {
+        return this.permits != null;
+    }
+
+    /**
+     * @param task
+     * @throws RejectedExecutionException 排队已满
+     */
+    public void execute(final Runnable task) {
+        if (this.pending.incrementAndGet() > this.maxConcurrency + this.queueSize) {
+            this.pending.decrementAndGet();
+            this.rejected.increment();
+            throw new RejectedExecutionException("jdbc executor queue is full");
+        }
+        final long submitNanos = System.nanoTime();
+        try {
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    JDBCExecutor.this.run(task, submitNanos);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.pending.decrementAndGet();
+            this.rejected.increment();
+            throw e;
+        }
+        this.submitted.increment();
+    }
+
+    private void run(Runnable task, long submitNanos) {
+        boolean acquired = false;
+        try {
+            if (this.permits != null) {
+                this.permits.acquire();
+                acquired = true;
+            }
+            long wait = System.nanoTime() - submitNanos;
+            this.waitNanos.add(wait);
+            this.started.increment();
+            this.maxWaitNanos.accumulateAndGet(wait, Math::max);
+            this.active.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                this.active.decrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.failed.increment();
+        } catch (RuntimeException e) {
+            this.failed.increment();
+            throw e;
+        } finally {
+            if (acquired) {
+                this.permits.release();
+            }
+            this.pending.decrementAndGet();
+            this.finished.increment();
+        }
+    }
+
+    /**
+     * 任务执行失败 由提交方在捕获异常后调用
+     */
+    public void markFailed() {
+        this.failed.increment();
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    /**
+     * @return 已提交未开始执行的任务数
+     */
+    public int getQueued() {
+        return Math.max(0, pending.get() - active.get());
+    }
+
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    /**
+     * @return 已结束的任务数 包含失败(见getFailed)及中断的任务
+     */
+    public long getFinished() {
+        return finished.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    /**
+     * @return 已开始执行的任务从提交到开始的平均等待时间
+     */
+    public long getAverageWaitNanos() {
+        long started = this.started.sum();
+        return started == 0 ? 0 : this.waitNanos.sum() / started;
+    }
+
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+}
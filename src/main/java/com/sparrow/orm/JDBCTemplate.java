@@ -19,27 +19,29 @@ package com.sparrow.orm;
 
 import com.sparrow.constant.CONSTANT;
 import com.sparrow.constant.SYS_OBJECT_NAME;
-import com.sparrow.constant.magic.SYMBOL;
 import com.sparrow.core.spi.ApplicationContext;
 import com.sparrow.datasource.ConnectionContextHolder;
 import com.sparrow.datasource.DatasourceKey;
 import com.sparrow.enums.DATABASE_SPLIT_STRATEGY;
-import com.sparrow.enums.STATUS_RECORD;
+import com.sparrow.orm.cache.QueryCache;
+import com.sparrow.orm.replica.ReplicaRouter;
+import com.sparrow.orm.metrics.OrmMetrics;
+import com.sparrow.orm.trace.SqlTracer;
+import com.sparrow.orm.trace.impl.LoggingSqlTracer;
 import com.sparrow.support.db.JDBCSupport;
 import com.sparrow.support.web.HttpContext;
 import com.sparrow.utility.StringUtility;
 
-import java.math.BigDecimal;
 import java.sql.Connection;
-import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.sql.Timestamp;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.regex.Matcher;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import javax.sql.DataSource;
 
 import org.slf4j.Logger;
@@ -55,50 +57,180 @@ public class JDBCTemplate implements JDBCSupport {
     /**
      * *********************************** 变量定义 *******************************************************************
      */
-    private static Map<String, JDBCSupport> executorPool = new ConcurrentHashMap<String, JDBCSupport>();
+    /**
+     * schema -> 按分库策略序号存放的template
+     */
+    private static final ConcurrentMap<String, AtomicReferenceArray<JDBCTemplate>> executorPool = new ConcurrentHashMap<String, AtomicReferenceArray<JDBCTemplate>>();
+
+    private static final int STRATEGY_COUNT = DATABASE_SPLIT_STRATEGY.values().length;
+    /**
+     * SQL跟踪 为null或未开启时执行路径上不计时也不渲染SQL
+     */
+    private static volatile SqlTracer sqlTracer = new LoggingSqlTracer();
+
+    private static volatile OrmMetrics ormMetrics = OrmMetrics.NOOP;
+    /**
+     * 每个连接缓存的PreparedStatement个数 小于等于0不缓存
+     */
+    private static volatile int statementCacheSize = 64;
+    /**
+     * 当前线程显式指定的数据源后缀 优先于分库策略从HttpContext取得的后缀
+     */
+    private static final ThreadLocal<String> DATA_SOURCE_SUFFIX = new ThreadLocal<String>();
 
     /**
      * dataSource与dataSourceSplitStrategy 两者唯一标识一个template 实际上是可以唯一确定一个数据源
      */
-    private String schema;
-    private DATABASE_SPLIT_STRATEGY dataSourceSplitStrategy;
+    private final String schema;
+    private final DATABASE_SPLIT_STRATEGY dataSourceSplitStrategy;
+    /**
+     * 默认分库策略下数据源key不随请求变化，构造时计算一次
+     */
+    private final String defaultDataSourceKey;
     /**
      * 连接支持器
      */
-    private ConnectionContextHolder connectionHolder;
+    private final ConnectionContextHolder connectionHolder;
+    /**
+     * 当前线程事务连接上的语句缓存
+     */
+    private final ThreadLocal<StatementCache> statementCache = new ThreadLocal<StatementCache>();
+    /**
+     * 从库连接 -> 从库 释放连接时归还借出计数
+     */
+    private final Map<Connection, ReplicaRouter.Replica> replicaConnections = new ConcurrentHashMap<Connection, ReplicaRouter.Replica>();
+    /**
+     * 查询结果缓存 为null时不启用
+     */
+    private volatile QueryCache queryCache;
 
 
     /**
+     * 每个(schema,分库策略)只创建一个template
+     * <p>
+     * 已创建时为一次map查找加一次数组读取，不拼接key；首次创建在该schema上加锁，避免并发启动时重复创建
+     *
      * @return
      */
-    public static JDBCSupport getInstance(String schema, DATABASE_SPLIT_STRATEGY databaseSplitStrategy) {
-
+    public static JDBCTemplate getInstance(String schema, DATABASE_SPLIT_STRATEGY databaseSplitStrategy) {
         if (databaseSplitStrategy == null) {
             databaseSplitStrategy = DATABASE_SPLIT_STRATEGY.DEFAULT;
         }
         if (StringUtility.isNullOrEmpty(schema)) {
             schema = DatasourceKey.getDefault().getSchema();
         }
-        String jdbcIdentify = schema + "_" + databaseSplitStrategy.toString().toLowerCase();
-        if (schema != null && executorPool.containsKey(jdbcIdentify)) {
-            return executorPool.get(jdbcIdentify);
-        } else {
-            JDBCSupport jdbcSupport = new JDBCTemplate(schema, databaseSplitStrategy);
-            executorPool.put(jdbcIdentify, jdbcSupport);
-            return jdbcSupport;
+        String key = schema == null ? "" : schema;
+        AtomicReferenceArray<JDBCTemplate> templates = executorPool.get(key);
+        if (templates == null) {
+            templates = new AtomicReferenceArray<JDBCTemplate>(STRATEGY_COUNT);
+            AtomicReferenceArray<JDBCTemplate> exist = executorPool.putIfAbsent(key, templates);
+            if (exist != null) {
+                templates = exist;
+            }
+        }
+        int index = databaseSplitStrategy.ordinal();
+        JDBCTemplate jdbcTemplate = templates.get(index);
+        if (jdbcTemplate != null) {
+            return jdbcTemplate;
+        }
+        synchronized (templates) {
+            jdbcTemplate = templates.get(index);
+            if (jdbcTemplate == null) {
+                jdbcTemplate = new JDBCTemplate(schema, databaseSplitStrategy);
+                templates.set(index, jdbcTemplate);
+            }
+            return jdbcTemplate;
         }
     }
 
-    public static JDBCSupport getInstance() {
+    public static JDBCTemplate getInstance() {
         return getInstance(null, null);
     }
 
+    public static SqlTracer getSqlTracer() {
+        return sqlTracer;
+    }
+
+    public static void setSqlTracer(SqlTracer sqlTracer) {
+        JDBCTemplate.sqlTracer = sqlTracer;
+    }
+
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * 启用查询结果缓存 可由多个JDBCTemplate共用同一个缓存
+     *
+     * @param queryCache 为null时关闭
+     */
+    public void setQueryCache(QueryCache queryCache) {
+        this.queryCache = queryCache;
+    }
+
+    public static OrmMetrics getOrmMetrics() {
+        return ormMetrics;
+    }
+
+    public static void setOrmMetrics(OrmMetrics ormMetrics) {
+        JDBCTemplate.ormMetrics = ormMetrics == null ? OrmMetrics.NOOP : ormMetrics;
+    }
+
+    public static int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    public static void setStatementCacheSize(int statementCacheSize) {
+        JDBCTemplate.statementCacheSize = statementCacheSize;
+    }
+
+    /**
+     * 为当前线程指定数据源后缀 如跨库查询时逐库执行
+     *
+     * @param suffix 为null时恢复按分库策略取后缀
+     * @return 之前绑定的后缀 用于恢复
+     */
+    public static String bindDataSourceSuffix(String suffix) {
+        String previous = DATA_SOURCE_SUFFIX.get();
+        if (suffix == null) {
+            DATA_SOURCE_SUFFIX.remove();
+        } else {
+            DATA_SOURCE_SUFFIX.set(suffix);
+        }
+        return previous;
+    }
+
+    public static String getBoundDataSourceSuffix() {
+        return DATA_SOURCE_SUFFIX.get();
+    }
+
+    /**
+     * @return 未开启指标时返回null
+     */
+    static OrmMetrics activeMetrics() {
+        OrmMetrics metrics = ormMetrics;
+        return metrics.isEnabled() ? metrics : null;
+    }
+
+    /**
+     * @return 未开启跟踪时返回null
+     */
+    private static SqlTracer activeTracer() {
+        SqlTracer tracer = sqlTracer;
+        if (tracer == null || !tracer.isEnabled()) {
+            return null;
+        }
+        return tracer;
+    }
+
     private JDBCTemplate(String schema, DATABASE_SPLIT_STRATEGY databaseSplitStrategy) {
         if (StringUtility.isNullOrEmpty(schema)) {
             schema = DatasourceKey.getDefault().getSchema();
         }
         this.schema = schema;
         this.dataSourceSplitStrategy = databaseSplitStrategy;
+        this.defaultDataSourceKey = DATABASE_SPLIT_STRATEGY.DEFAULT.equals(databaseSplitStrategy) ?
+            new DatasourceKey(schema, this.getDataSourceSuffix()).getKey() : null;
         this.connectionHolder = ApplicationContext.getContainer().getBean(SYS_OBJECT_NAME.CONNECTION_CONTEXT_HOLDER);
     }
 
@@ -107,89 +239,21 @@ public class JDBCTemplate implements JDBCSupport {
     /**
      * 设置参数
      * <p/>
-     * 参数类型未知的情况下调用
-     * <p/>
-     * 仅提供给ORM 新增更新时，ORM反射未知数据类型时使用
+     * 按参数类型(类型未知时按值的类型)取预先解析的ParameterBinder
      *
      * @param preparedStatement
      * @param parameter
      * @param index
      */
     private void bindParameter(PreparedStatement preparedStatement,
-                               Parameter parameter, int index) {
-
+                       Parameter parameter, int index) {
         Object value = parameter.getParameterValue();
         Class<?> fieldType = parameter.getType();
         if (fieldType == null && value != null) {
             fieldType = value.getClass();
         }
         try {
-            if (fieldType == byte.class || fieldType == Byte.class) {
-                preparedStatement.setByte(
-                        index,
-                        StringUtility.isNullOrEmpty(value) ? 0 : (Byte) value);
-                return;
-            }
-            if (fieldType == int.class || fieldType == Integer.class) {
-                preparedStatement.setInt(
-                        index,
-                        StringUtility.isNullOrEmpty(value) ? 0 : (Integer) value);
-                return;
-            }
-            if (fieldType == long.class || fieldType == Long.class) {
-                preparedStatement.setLong(
-                        index,
-                        StringUtility.isNullOrEmpty(value) ? 0L : (Long) value);
-                return;
-            }
-            if (fieldType == String.class) {
-                preparedStatement.setString(index, StringUtility
-                        .isNullOrEmpty(value) ? "" : String.valueOf(value));
-                return;
-            }
-            if (fieldType == Date.class) {
-                preparedStatement
-                        .setDate(
-                                index, (Date) value);
-                return;
-            }
-            if (fieldType == Timestamp.class) {
-                preparedStatement
-                        .setTimestamp(
-                                index, (Timestamp) value);
-                return;
-            }
-            if (fieldType == boolean.class || fieldType == Boolean.class) {
-                boolean b = false;
-                if (!StringUtility.isNullOrEmpty(value)) {
-                    if (String.valueOf(STATUS_RECORD.ENABLE
-                            .ordinal()).equals(value) || Boolean.TRUE.toString().equalsIgnoreCase(value.toString())) {
-                        b = true;
-                    }
-                }
-                preparedStatement.setBoolean(
-                        index, b);
-                return;
-            }
-            if (fieldType == double.class || fieldType == Double.class) {
-                preparedStatement.setDouble(
-                        index,
-                        StringUtility.isNullOrEmpty(value) ? 0.0 : (Double) value);
-                return;
-            }
-            if (fieldType == BigDecimal.class) {
-                BigDecimal bigDecimal = (BigDecimal) value;
-                if (bigDecimal == null) {
-                    bigDecimal = new BigDecimal(0);
-                }
-                bigDecimal = bigDecimal.setScale(parameter.getScale(), BigDecimal.ROUND_HALF_UP);
-                preparedStatement.setBigDecimal(
-                        index, bigDecimal);
-                return;
-            }
-            preparedStatement.setObject(index, null);
-            logger.debug("JDBCTemplate setSQLParameter error sqlType not exist"
-                    + fieldType);
+            ParameterBinder.of(fieldType).bind(preparedStatement, index, value, parameter.getScale());
         } catch (Exception e) {
             logger.error(
                     "Executor JDBCTemplate error attribute:"
@@ -200,18 +264,17 @@ public class JDBCTemplate implements JDBCSupport {
     }
 
     private String getDataSourceSuffix() {
-        HttpContext httpContext = HttpContext.getContext();
         String suffix = null;
         switch (this.dataSourceSplitStrategy) {
             case LANGUAGE:
-                suffix = (String) httpContext.get(CONSTANT.REQUEST_LANGUAGE);
+                suffix = (String) HttpContext.getContext().get(CONSTANT.REQUEST_LANGUAGE);
                 break;
             case USER_ID:
-                suffix = (String) httpContext.get(CONSTANT.REQUEST_USER_ID);
+                suffix = (String) HttpContext.getContext().get(CONSTANT.REQUEST_USER_ID);
                 break;
             case FOREIGN_KEY:
             case USER_DEFINED:
-                suffix = (String) httpContext.get(CONSTANT.REQUEST_DATABASE_SUFFIX);
+                suffix = (String) HttpContext.getContext().get(CONSTANT.REQUEST_DATABASE_SUFFIX);
                 break;
             default:
                 suffix = "default";
@@ -220,24 +283,90 @@ public class JDBCTemplate implements JDBCSupport {
         return suffix;
     }
 
+    private String getDataSourceKey() {
+        String suffix = DATA_SOURCE_SUFFIX.get();
+        if (suffix != null) {
+            return new DatasourceKey(this.schema, suffix).getKey();
+        }
+        if (this.defaultDataSourceKey != null) {
+            return this.defaultDataSourceKey;
+        }
+        return new DatasourceKey(this.schema, this.getDataSourceSuffix()).getKey();
+    }
+
+    /**
+     * 当前线程在本数据源上是否有进行中的事务
+     *
+     * @return
+     */
+    public boolean isInTransaction() {
+        Connection connection = this.connectionHolder.getConnection(this.getDataSourceKey());
+        try {
+            return connection != null && !connection.getAutoCommit();
+        } catch (SQLException e) {
+            logger.error("connection auto commit", e);
+            return false;
+        }
+    }
+
+    /**
+     * 当前线程实际使用的数据源后缀 用于切换线程执行时传递给工作线程
+     *
+     * @return 默认分库策略且未显式指定时返回null
+     */
+    public String resolveDataSourceSuffix() {
+        String suffix = DATA_SOURCE_SUFFIX.get();
+        if (suffix != null || this.defaultDataSourceKey != null) {
+            return suffix;
+        }
+        return this.getDataSourceSuffix();
+    }
+
     /**
      * 获取数据库连接
+     * <p>
+     * template为单例，但连接绑定在当前线程上(ConnectionContextHolder)，所以此处无需加锁
      *
      * @return
      */
-    private synchronized Connection getConnection() {
+    private Connection getConnection() {
+        return this.getConnection(false);
+    }
+
+    /**
+     * 获取数据库连接
+     * <p>
+     * 只读语句在事务外且主库注册了ReplicaRouter时走从库，从库不可用时回退主库
+     *
+     * @param useReplica 是否允许走从库
+     * @return
+     */
+    private Connection getConnection(boolean useReplica) {
         //todo data source key 与 connection url不一致
         //todo data source+suffix determine datasource
         //todo data source+database_split_key determine jdbc template
         // todo determine object
-        DatasourceKey dataSourceKey = new DatasourceKey(this.schema, this.getDataSourceSuffix());
-        Connection connection = this.connectionHolder.getConnection(dataSourceKey.getKey());
+        String dataSourceKey = this.getDataSourceKey();
+        Connection connection = this.connectionHolder.getConnection(dataSourceKey);
         //当前未绑定链接或已经绑定但不是事务
         try {
             if (connection == null || connection.getAutoCommit()) {
+                //上一个事务已结束 关闭其语句缓存
+                this.closeStatementCache();
+                if (useReplica) {
+                    Connection replicaConnection = this.getReplicaConnection(dataSourceKey);
+                    if (replicaConnection != null) {
+                        return replicaConnection;
+                    }
+                }
                 // 新连接并与当前线程绑定
-                DataSource dataSource = connectionHolder.getDataSourceFactory().getDataSource(dataSourceKey.getKey());
+                DataSource dataSource = connectionHolder.getDataSourceFactory().getDataSource(dataSourceKey);
+                OrmMetrics metrics = activeMetrics();
+                long start = metrics == null ? 0L : System.nanoTime();
                 connection = dataSource.getConnection();
+                if (metrics != null) {
+                    metrics.connectionAcquired(this.schema, System.nanoTime() - start);
+                }
                 //不管是否为事务都需要绑定到线程上，以便执行完后关闭proxyConnection
                 //(ProxyConnection)connection会报错，故getConnection之后无法放回池中
                 this.connectionHolder
@@ -249,6 +378,94 @@ public class JDBCTemplate implements JDBCSupport {
         return connection;
     }
 
+    /**
+     * @return 未注册从库、处于读己之写窗口或从库均不可用时返回null
+     */
+    private Connection getReplicaConnection(String dataSourceKey) {
+        ReplicaRouter router = ReplicaRouter.get(dataSourceKey);
+        if (router == null) {
+            return null;
+        }
+        ReplicaRouter.Replica replica;
+        while ((replica = router.select()) != null) {
+            try {
+                DataSource dataSource = this.connectionHolder.getDataSourceFactory().getDataSource(replica.getDataSourceKey());
+                OrmMetrics metrics = activeMetrics();
+                long start = metrics == null ? 0L : System.nanoTime();
+                Connection connection = dataSource.getConnection();
+                if (metrics != null) {
+                    metrics.connectionAcquired(this.schema, System.nanoTime() - start);
+                }
+                replica.acquire();
+                this.replicaConnections.put(connection, replica);
+                this.connectionHolder.bindConnection(connection);
+                return connection;
+            } catch (Exception e) {
+                logger.error("get replica connection error " + replica.getDataSourceKey(), e);
+                router.markFailure(replica);
+                if (!replica.isEjected()) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 从库上执行失败 计入从库健康状态
+     *
+     * @return 语句是否在从库上执行
+     */
+    private boolean replicaFailure(Statement statement) {
+        ReplicaRouter.Replica replica = this.replicaOf(statement);
+        if (replica == null) {
+            return false;
+        }
+        ReplicaRouter router = ReplicaRouter.get(this.getDataSourceKey());
+        if (router != null) {
+            router.markFailure(replica);
+        }
+        return true;
+    }
+
+    /**
+     * 从库上语句执行成功 清零连续失败次数
+     * 只在语句完成后调用，获取连接成功不代表从库可用
+     */
+    private void replicaSuccess(Statement statement) {
+        ReplicaRouter.Replica replica = this.replicaOf(statement);
+        if (replica != null) {
+            replica.markSuccess();
+        }
+    }
+
+    private ReplicaRouter.Replica replicaOf(Statement statement) {
+        if (statement == null || this.replicaConnections.isEmpty()) {
+            return null;
+        }
+        try {
+            return this.replicaConnections.get(statement.getConnection());
+        } catch (SQLException ignore) {
+            return null;
+        }
+    }
+
+    /**
+     * 写入后调用 开启读己之写窗口时记录当前线程的写入，并使查询缓存中涉及的表失效
+     */
+    private void markWrite(String... commands) {
+        ReplicaRouter router = ReplicaRouter.get(this.getDataSourceKey());
+        if (router != null) {
+            router.markWrite();
+        }
+        QueryCache queryCache = this.queryCache;
+        if (queryCache != null) {
+            for (String command : commands) {
+                queryCache.invalidate(command);
+            }
+        }
+    }
+
     /**
      * 获取PreparedStatement对象用于参数化SQL的执行
      *
@@ -256,33 +473,52 @@ public class JDBCTemplate implements JDBCSupport {
      * @return
      */
     private PreparedStatement getPreparedStatement(JDBCParameter jdbcParameter) {
+        return this.getPreparedStatement(jdbcParameter, ResultSet.TYPE_SCROLL_INSENSITIVE);
+    }
+
+    /**
+     * 获取PreparedStatement对象用于参数化SQL的执行
+     *
+     * @param jdbcParameter
+     * @param readOnlyResultSetType 只读语句的结果集类型
+     * @return
+     */
+    private PreparedStatement getPreparedStatement(JDBCParameter jdbcParameter, int readOnlyResultSetType) {
+        return this.getPreparedStatement(jdbcParameter, readOnlyResultSetType, jdbcParameter.isReadOnly());
+    }
+
+    /**
+     * 获取PreparedStatement对象用于参数化SQL的执行
+     *
+     * @param jdbcParameter
+     * @param readOnlyResultSetType 只读语句的结果集类型
+     * @param useReplica            是否允许走从库
+     * @return
+     */
+    private PreparedStatement getPreparedStatement(JDBCParameter jdbcParameter, int readOnlyResultSetType,
+        boolean useReplica) {
         PreparedStatement preparedStatement = null;
         Connection connection = null;
         try {
-            connection = this.getConnection();
+            connection = this.getConnection(useReplica);
             connection.setReadOnly(jdbcParameter.isReadOnly());
-            if (jdbcParameter.isAutoIncrement()) {
-                preparedStatement = connection.prepareStatement(jdbcParameter.getCommand(),
-                        Statement.RETURN_GENERATED_KEYS);
-            } else {
-                // 存储过程
-                if (jdbcParameter.getCommand().trim().toLowerCase().startsWith("call")) {
-                    if (jdbcParameter.isReadOnly()) {
-                        preparedStatement = connection.prepareCall(jdbcParameter.getCommand(),
-                                ResultSet.TYPE_SCROLL_INSENSITIVE,
-                                ResultSet.CONCUR_READ_ONLY);
-                    } else {
-                        preparedStatement = connection.prepareCall(jdbcParameter.getCommand());
-                    }
-                } else {
-                    if (jdbcParameter.isReadOnly()) {
-                        preparedStatement = connection.prepareStatement(jdbcParameter.getCommand(),
-                                ResultSet.TYPE_SCROLL_INSENSITIVE,
-                                ResultSet.CONCUR_READ_ONLY);
-                    } else {
-                        preparedStatement = connection.prepareStatement(jdbcParameter.getCommand());
-                    }
+            int resultSetType = jdbcParameter.isReadOnly() ? readOnlyResultSetType : ResultSet.TYPE_FORWARD_ONLY;
+            StatementCache cache = this.getStatementCache(connection);
+            if (cache != null) {
+                preparedStatement = cache.take(jdbcParameter.getCommand(), resultSetType, jdbcParameter.isAutoIncrement());
+            }
+            if (preparedStatement == null) {
+                OrmMetrics metrics = activeMetrics();
+                long start = metrics == null ? 0L : System.nanoTime();
+                preparedStatement = this.prepareStatement(connection, jdbcParameter, readOnlyResultSetType);
+                if (metrics != null) {
+                    metrics.statementPrepared(this.schema, jdbcParameter.getCommand(), System.nanoTime() - start);
+                }
+                if (cache != null) {
+                    cache.register(preparedStatement, jdbcParameter.getCommand(), resultSetType, jdbcParameter.isAutoIncrement());
                 }
+            } else {
+                preparedStatement.clearParameters();
             }
             for (int i = 0; i < jdbcParameter.getParameters().size(); i++) {
                 this.bindParameter(preparedStatement, jdbcParameter.getParameters().get(i), i + 1);
@@ -306,17 +542,90 @@ public class JDBCTemplate implements JDBCSupport {
             }
             logger.error("connection error", e);
             return null;
-        } finally {
-            String commandString = jdbcParameter.getCommand();
-            for (Parameter parameter : jdbcParameter.getParameters()) {
-                Object parameterValue = parameter.getParameterValue();
-                if (parameterValue == null) {
-                    parameterValue = SYMBOL.EMPTY;
+        }
+    }
+
+    private PreparedStatement prepareStatement(Connection connection, JDBCParameter jdbcParameter,
+                                               int readOnlyResultSetType) throws SQLException {
+        if (jdbcParameter.isAutoIncrement()) {
+            return connection.prepareStatement(jdbcParameter.getCommand(),
+                    Statement.RETURN_GENERATED_KEYS);
+        }
+        // 存储过程
+        if (isCall(jdbcParameter.getCommand())) {
+            if (jdbcParameter.isReadOnly()) {
+                return connection.prepareCall(jdbcParameter.getCommand(),
+                        readOnlyResultSetType,
+                        ResultSet.CONCUR_READ_ONLY);
+            }
+            return connection.prepareCall(jdbcParameter.getCommand());
+        }
+        if (jdbcParameter.isReadOnly()) {
+            return connection.prepareStatement(jdbcParameter.getCommand(),
+                    readOnlyResultSetType,
+                    ResultSet.CONCUR_READ_ONLY);
+        }
+        return connection.prepareStatement(jdbcParameter.getCommand());
+    }
+
+    private static boolean isCall(String command) {
+        int start = 0;
+        while (start < command.length() && Character.isWhitespace(command.charAt(start))) {
+            start++;
+        }
+        return command.regionMatches(true, start, "call", 0, 4);
+    }
+
+    /**
+     * 事务中连接在多条语句间保持绑定，语句按连接缓存复用；
+     * 非事务语句执行完即关闭并归还连接，不缓存(可使用驱动或连接池的语句缓存)
+     *
+     * @param connection
+     * @return 不缓存时返回null
+     * @throws SQLException
+     */
+    private StatementCache getStatementCache(Connection connection) throws SQLException {
+        int capacity = statementCacheSize;
+        if (capacity <= 0 || connection.getAutoCommit()) {
+            return null;
+        }
+        StatementCache cache = this.statementCache.get();
+        if (cache != null && cache.getConnection() == connection) {
+            return cache;
+        }
+        if (cache != null) {
+            cache.close();
+        }
+        cache = new StatementCache(connection, capacity);
+        this.statementCache.set(cache);
+        return cache;
+    }
+
+    /**
+     * 关闭当前线程在本template上的语句缓存并解除对连接的引用
+     * <p>
+     * 本template下次在事务外使用时会自动调用；事务管理器应在提交或回滚后、归还连接前调用
+     * {@link #releaseStatementCaches()}，避免语句随连接回到连接池或被空闲线程长期持有
+     */
+    public void closeStatementCache() {
+        StatementCache cache = this.statementCache.get();
+        if (cache != null) {
+            cache.close();
+            this.statementCache.remove();
+        }
+    }
+
+    /**
+     * 关闭当前线程在所有template上的语句缓存 事务结束(提交、回滚或恢复自动提交)后调用
+     */
+    public static void releaseStatementCaches() {
+        for (AtomicReferenceArray<JDBCTemplate> templates : executorPool.values()) {
+            for (int i = 0; i < templates.length(); i++) {
+                JDBCTemplate jdbcTemplate = templates.get(i);
+                if (jdbcTemplate != null) {
+                    jdbcTemplate.closeStatementCache();
                 }
-                commandString = commandString.replaceFirst("\\?",
-                        Matcher.quoteReplacement(parameterValue.toString()));
             }
-            logger.debug("SQL:" + commandString);
         }
     }
 
@@ -328,6 +637,9 @@ public class JDBCTemplate implements JDBCSupport {
      */
     @Override
     public void executeUpdate(String[] commandString) {
+        SqlTracer tracer = activeTracer();
+        OrmMetrics metrics = activeMetrics();
+        long start = tracer == null && metrics == null ? 0L : System.nanoTime();
         Statement statement = null;
         try {
             statement = this.getConnection().createStatement();
@@ -340,7 +652,6 @@ public class JDBCTemplate implements JDBCSupport {
             } catch (SQLException e) {
                 throw new RuntimeException(e);
             }
-            logger.debug("BATCH SQL:" + command);
         }
         try {
             statement.executeBatch();
@@ -348,6 +659,16 @@ public class JDBCTemplate implements JDBCSupport {
             throw new RuntimeException(e);
         } finally {
             this.release(statement);
+            this.markWrite(commandString);
+            long elapsed = System.nanoTime() - start;
+            for (String command : commandString) {
+                if (tracer != null) {
+                    tracer.trace(command, null, elapsed);
+                }
+                if (metrics != null) {
+                    metrics.statementExecuted(this.schema, command, elapsed, -1);
+                }
+            }
         }
     }
 
@@ -358,6 +679,9 @@ public class JDBCTemplate implements JDBCSupport {
      */
     @Override
     public int executeUpdate(String commandString) {
+        SqlTracer tracer = activeTracer();
+        OrmMetrics metrics = activeMetrics();
+        long start = tracer == null && metrics == null ? 0L : System.nanoTime();
         Connection connection = this.getConnection();
         Statement statement = null;
         try {
@@ -365,13 +689,21 @@ public class JDBCTemplate implements JDBCSupport {
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+        int count = -1;
         try {
-            return statement.executeUpdate(commandString);
+            count = statement.executeUpdate(commandString);
+            return count;
         } catch (SQLException e) {
             throw new RuntimeException(e);
         } finally {
-            logger.debug("SQL:" + commandString);
             this.release(statement);
+            this.markWrite(commandString);
+            if (tracer != null) {
+                tracer.trace(commandString, null, System.nanoTime() - start);
+            }
+            if (metrics != null) {
+                metrics.statementExecuted(this.schema, commandString, System.nanoTime() - start, count);
+            }
         }
     }
 
@@ -383,18 +715,156 @@ public class JDBCTemplate implements JDBCSupport {
      */
     @Override
     public int executeUpdate(JDBCParameter jdbcParameter) {
+        SqlTracer tracer = activeTracer();
+        OrmMetrics metrics = activeMetrics();
+        long start = tracer == null && metrics == null ? 0L : System.nanoTime();
         PreparedStatement preparedStatement = this.getPreparedStatement(jdbcParameter);
         if (preparedStatement == null) {
             return 0;
         }
+        int count = -1;
         try {
             try {
-                return preparedStatement.executeUpdate();
+                count = preparedStatement.executeUpdate();
+                return count;
             } catch (SQLException e) {
                 throw new RuntimeException(e);
             }
         } finally {
             this.release(preparedStatement);
+            this.markWrite(jdbcParameter.getCommand());
+            if (tracer != null) {
+                tracer.trace(jdbcParameter.getCommand(), jdbcParameter.getParameters(), System.nanoTime() - start);
+            }
+            if (metrics != null) {
+                metrics.statementExecuted(this.schema, jdbcParameter.getCommand(), System.nanoTime() - start, count);
+            }
+        }
+    }
+
+    /**
+     * 以同一个PreparedStatement批量执行参数化更新(addBatch/executeBatch)
+     * <p>
+     * 所有参数共用第一条的SQL，每batchSize条提交一次
+     *
+     * @param jdbcParameters
+     * @param batchSize
+     * @param generatedKeys  自增插入时按顺序回填生成的主键，不需要时传null
+     * @return 每条语句的影响行数
+     */
+    public int[] executeBatch(List<JDBCParameter> jdbcParameters, int batchSize, long[] generatedKeys) {
+        int[] updateCounts = new int[jdbcParameters.size()];
+        if (jdbcParameters.isEmpty()) {
+            return updateCounts;
+        }
+        if (batchSize <= 0) {
+            batchSize = jdbcParameters.size();
+        }
+        JDBCParameter first = jdbcParameters.get(0);
+        boolean returnKeys = first.isAutoIncrement() && generatedKeys != null;
+        SqlTracer tracer = activeTracer();
+        OrmMetrics metrics = activeMetrics();
+        long start = tracer == null && metrics == null ? 0L : System.nanoTime();
+        PreparedStatement preparedStatement = null;
+        try {
+            Connection connection = this.getConnection();
+            connection.setReadOnly(false);
+            if (returnKeys) {
+                preparedStatement = connection.prepareStatement(first.getCommand(), Statement.RETURN_GENERATED_KEYS);
+            } else {
+                preparedStatement = connection.prepareStatement(first.getCommand());
+            }
+            int batchStart = 0;
+            for (int i = 0; i < jdbcParameters.size(); i++) {
+                List<Parameter> parameters = jdbcParameters.get(i).getParameters();
+                for (int j = 0; j < parameters.size(); j++) {
+                    this.bindParameter(preparedStatement, parameters.get(j), j + 1);
+                }
+                preparedStatement.addBatch();
+                if (i + 1 - batchStart < batchSize && i < jdbcParameters.size() - 1) {
+                    continue;
+                }
+                int[] counts = preparedStatement.executeBatch();
+                System.arraycopy(counts, 0, updateCounts, batchStart, counts.length);
+                if (returnKeys) {
+                    ResultSet keys = preparedStatement.getGeneratedKeys();
+                    try {
+                        for (int k = batchStart; k <= i && keys.next(); k++) {
+                            generatedKeys[k] = keys.getLong(1);
+                        }
+                    } finally {
+                        keys.close();
+                    }
+                }
+                batchStart = i + 1;
+            }
+            return updateCounts;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            this.release(preparedStatement);
+            this.markWrite(first.getCommand());
+            if (tracer != null) {
+                tracer.trace(first.getCommand(), null, System.nanoTime() - start);
+            }
+            if (metrics != null) {
+                long count = 0;
+                for (int updateCount : updateCounts) {
+                    count += Math.max(updateCount, 0);
+                }
+                metrics.statementExecuted(this.schema, first.getCommand(), System.nanoTime() - start, count);
+            }
+        }
+    }
+
+    /**
+     * 执行一条插入语句(可为多行insert) 不经过语句缓存
+     *
+     * @param jdbcParameter
+     * @param generatedKeys 按行顺序回填生成的主键 不需要时传null
+     * @return 影响行数
+     */
+    public int executeInsert(JDBCParameter jdbcParameter, long[] generatedKeys) {
+        SqlTracer tracer = activeTracer();
+        OrmMetrics metrics = activeMetrics();
+        long start = tracer == null && metrics == null ? 0L : System.nanoTime();
+        PreparedStatement preparedStatement = null;
+        int count = -1;
+        try {
+            Connection connection = this.getConnection();
+            connection.setReadOnly(false);
+            if (generatedKeys != null) {
+                preparedStatement = connection.prepareStatement(jdbcParameter.getCommand(), Statement.RETURN_GENERATED_KEYS);
+            } else {
+                preparedStatement = connection.prepareStatement(jdbcParameter.getCommand());
+            }
+            List<Parameter> parameters = jdbcParameter.getParameters();
+            for (int i = 0; i < parameters.size(); i++) {
+                this.bindParameter(preparedStatement, parameters.get(i), i + 1);
+            }
+            count = preparedStatement.executeUpdate();
+            if (generatedKeys != null) {
+                ResultSet keys = preparedStatement.getGeneratedKeys();
+                try {
+                    for (int i = 0; i < generatedKeys.length && keys.next(); i++) {
+                        generatedKeys[i] = keys.getLong(1);
+                    }
+                } finally {
+                    keys.close();
+                }
+            }
+            return count;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            this.release(preparedStatement);
+            this.markWrite(jdbcParameter.getCommand());
+            if (tracer != null) {
+                tracer.trace(jdbcParameter.getCommand(), jdbcParameter.getParameters(), System.nanoTime() - start);
+            }
+            if (metrics != null) {
+                metrics.statementExecuted(this.schema, jdbcParameter.getCommand(), System.nanoTime() - start, count);
+            }
         }
     }
 
@@ -407,12 +877,16 @@ public class JDBCTemplate implements JDBCSupport {
     @Override
     public Long executeAutoIncrementInsert(JDBCParameter jdbcParameter) {
         Long generatedKey = 0L;
+        SqlTracer tracer = activeTracer();
+        OrmMetrics metrics = activeMetrics();
+        long start = tracer == null && metrics == null ? 0L : System.nanoTime();
         PreparedStatement preparedStatement = this.getPreparedStatement(jdbcParameter);
         if (preparedStatement == null) {
             return 0L;
         }
+        int count = -1;
         try {
-            preparedStatement.executeUpdate();
+            count = preparedStatement.executeUpdate();
             ResultSet result = preparedStatement.getGeneratedKeys();
             if (result.next()) {
                 generatedKey = result.getLong(1);
@@ -421,6 +895,13 @@ public class JDBCTemplate implements JDBCSupport {
             throw new RuntimeException(e);
         } finally {
             this.release(preparedStatement);
+            this.markWrite(jdbcParameter.getCommand());
+            if (tracer != null) {
+                tracer.trace(jdbcParameter.getCommand(), jdbcParameter.getParameters(), System.nanoTime() - start);
+            }
+            if (metrics != null) {
+                metrics.statementExecuted(this.schema, jdbcParameter.getCommand(), System.nanoTime() - start, count);
+            }
         }
         return generatedKey;
     }
@@ -428,6 +909,8 @@ public class JDBCTemplate implements JDBCSupport {
     /******************************************************* 返回结果集 ********************************************/
     /**
      * 执行一条SELECT语句 不关闭链接
+     * <p>
+     * 启用查询缓存时事务外的select语句先查缓存，未命中时将结果读入离线结果集后缓存
      *
      * @param jdbcParameter
      * @return
@@ -435,34 +918,141 @@ public class JDBCTemplate implements JDBCSupport {
      */
     @Override
     public ResultSet executeQuery(JDBCParameter jdbcParameter) {
+        try {
+            return this.executeQueryOrThrow(jdbcParameter);
+        } catch (RuntimeException e) {
+            logger.error("execute query error" + jdbcParameter.getCommand(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 同executeQuery 执行失败时抛出异常而不是返回null
+     *
+     * @param jdbcParameter
+     * @return 不为null
+     */
+    public ResultSet executeQueryOrThrow(JDBCParameter jdbcParameter) {
+        QueryCache queryCache = this.queryCache;
+        if (queryCache == null || !QueryCache.isCacheable(jdbcParameter.getCommand()) || this.isInTransaction()) {
+            return this.query(jdbcParameter, jdbcParameter.isReadOnly());
+        }
+        QueryCache.Key key = queryCache.key(this.getDataSourceKey(), jdbcParameter);
+        try {
+            ResultSet cached = queryCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            QueryCache.Snapshot snapshot = queryCache.snapshot(jdbcParameter.getCommand());
+            ResultSet rs = this.query(jdbcParameter, jdbcParameter.isReadOnly());
+            try {
+                return queryCache.put(key, snapshot, rs);
+            } finally {
+                this.release(rs);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 执行查询 从库上执行失败时计入从库健康状态并在主库重试一次
+     *
+     * @param jdbcParameter
+     * @param useReplica    是否允许走从库
+     * @return 不为null
+     */
+    private ResultSet query(JDBCParameter jdbcParameter, boolean useReplica) {
+        SqlTracer tracer = activeTracer();
+        OrmMetrics metrics = activeMetrics();
+        long start = tracer == null && metrics == null ? 0L : System.nanoTime();
         Statement statement = null;
-        Connection connection = null;
-        ResultSet resultSet = null;
         try {
+            ResultSet resultSet;
             if (jdbcParameter.getParameters() == null || jdbcParameter.getParameters().size() == 0) {
-                connection = this.getConnection();
-                statement = connection.createStatement(
+                statement = this.getConnection(useReplica).createStatement(
                         ResultSet.TYPE_SCROLL_SENSITIVE,
                         ResultSet.CONCUR_READ_ONLY);
-                logger.debug("SQL:" + jdbcParameter.getCommand());
                 resultSet = statement.executeQuery(jdbcParameter.getCommand());
             } else {
-                statement = this.getPreparedStatement(jdbcParameter);
+                statement = this.getPreparedStatement(jdbcParameter, ResultSet.TYPE_SCROLL_INSENSITIVE, useReplica);
                 if (statement == null) {
-                    return null;
+                    throw new SQLException("prepare statement error " + jdbcParameter.getCommand());
                 }
                 resultSet = ((PreparedStatement) statement).executeQuery();
             }
             if (resultSet == null) {
-                this.release(statement);
-                return null;
+                throw new SQLException("no result set " + jdbcParameter.getCommand());
+            }
+            this.replicaSuccess(statement);
+            return resultSet;
+        } catch (Exception e) {
+            boolean replica = this.replicaFailure(statement);
+            this.release(statement);
+            if (!replica) {
+                throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+            }
+            logger.warn("replica query error, retry on primary " + jdbcParameter.getCommand(), e);
+            return this.query(jdbcParameter, false);
+        } finally {
+            if (tracer != null) {
+                tracer.trace(jdbcParameter.getCommand(), jdbcParameter.getParameters(), System.nanoTime() - start);
+            }
+            if (metrics != null) {
+                metrics.statementExecuted(this.schema, jdbcParameter.getCommand(), System.nanoTime() - start, -1);
+            }
+        }
+    }
+
+    /**
+     * 以只向前游标执行一条SELECT语句 不关闭链接
+     * <p>
+     * 结果集不在客户端缓存，由fetchSize决定每次从服务端拉取的行数
+     * mysql 驱动下fetchSize=Integer.MIN_VALUE为逐行流式读取，正数fetchSize需要连接参数useCursorFetch=true；
+     * 其他驱动只接受非负的fetchSize
+     * <p>
+     * 执行失败时抛出异常，不以空结果掩盖错误
+     *
+     * @param jdbcParameter
+     * @param fetchSize
+     * @return 不为null
+     */
+    public ResultSet executeCursor(JDBCParameter jdbcParameter, int fetchSize) {
+        SqlTracer tracer = activeTracer();
+        OrmMetrics metrics = activeMetrics();
+        long start = tracer == null && metrics == null ? 0L : System.nanoTime();
+        Statement statement = null;
+        try {
+            ResultSet resultSet;
+            if (jdbcParameter.getParameters() == null || jdbcParameter.getParameters().size() == 0) {
+                statement = this.getConnection(jdbcParameter.isReadOnly()).createStatement(
+                        ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY);
+                statement.setFetchSize(fetchSize);
+                resultSet = statement.executeQuery(jdbcParameter.getCommand());
             } else {
-                return resultSet;
+                PreparedStatement preparedStatement = this.getPreparedStatement(jdbcParameter, ResultSet.TYPE_FORWARD_ONLY);
+                if (preparedStatement == null) {
+                    throw new SQLException("prepare cursor statement error " + jdbcParameter.getCommand());
+                }
+                statement = preparedStatement;
+                preparedStatement.setFetchSize(fetchSize);
+                resultSet = preparedStatement.executeQuery();
             }
+            this.replicaSuccess(statement);
+            return resultSet;
         } catch (Exception e) {
-            logger.error("execute query error" + jdbcParameter.getCommand(), e);
+            logger.error("execute cursor error" + jdbcParameter.getCommand(), e);
+            this.replicaFailure(statement);
             this.release(statement);
-            return null;
+            throw new RuntimeException(e);
+        } finally {
+            if (tracer != null) {
+                tracer.trace(jdbcParameter.getCommand(), jdbcParameter.getParameters(), System.nanoTime() - start);
+            }
+            if (metrics != null) {
+                metrics.statementExecuted(this.schema, jdbcParameter.getCommand(), System.nanoTime() - start, -1);
+            }
         }
     }
 
@@ -479,22 +1069,29 @@ public class JDBCTemplate implements JDBCSupport {
      */
     @Override
     public <P> P executeScalar(JDBCParameter jdbcParameter) {
-        Object result = null;
-        ResultSet rs = this.executeQuery(jdbcParameter);
-        if (rs == null) {
+        try {
+            return this.executeScalarOrThrow(jdbcParameter);
+        } catch (RuntimeException e) {
+            logger.error(jdbcParameter.getCommand(), e);
             return null;
         }
+    }
+
+    /**
+     * 同executeScalar 执行失败时抛出异常，返回null只表示没有行或值为null
+     *
+     * @param jdbcParameter
+     * @return
+     */
+    public <P> P executeScalarOrThrow(JDBCParameter jdbcParameter) {
+        ResultSet rs = this.executeQueryOrThrow(jdbcParameter);
         try {
-            if (rs.next()) {
-                result = rs.getObject(1);
-            }
-        } catch (Exception e) {
-            logger.error(jdbcParameter.getCommand(), e);
-            result = null;
+            return rs.next() ? (P) rs.getObject(1) : null;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
         } finally {
             this.release(rs);
         }
-        return (P) result;
     }
 
     @Override
@@ -509,8 +1106,19 @@ public class JDBCTemplate implements JDBCSupport {
                 return;
             }
             if (!statement.getConnection().getAutoCommit()) {
+                //事务中的语句归还到连接的语句缓存 未经缓存取出的语句(如批量执行)直接关闭
+                StatementCache cache = this.statementCache.get();
+                if (cache == null || !cache.offer(statement)) {
+                    statement.close();
+                }
                 return;
             }
+            if (!this.replicaConnections.isEmpty()) {
+                ReplicaRouter.Replica replica = this.replicaConnections.remove(statement.getConnection());
+                if (replica != null) {
+                    replica.release();
+                }
+            }
             this.connectionHolder
                     .unbindConnection(statement.getConnection());
             statement.close();
@@ -0,0 +1,355 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm;
+
+import com.sparrow.enums.STATUS_RECORD;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+
+/**
+ * 按参数类型选择的参数绑定方法
+ * <p>
+ * 每个类型只解析一次(ClassValue)，绑定时为一次查表加一次虚调用；
+ * null以setNull绑定，可通过{@link #setNullAsDefault(boolean)}恢复以0,"",false代替null的旧行为
+ *
+ * @author harry
+ */
+public enum ParameterBinder {
+    BYTE(Types.TINYINT) {
+        @Override
+        void set(PreparedStatement ps, int index, Object value, int scale) throws SQLException {
+            ps.setByte(index, value instanceof Number ? ((Number) value).byteValue() : Byte.parseByte(value.toString().trim()));
+        }
+
+        @Override
+        void setDefault(PreparedStatement ps, int index, int scale) throws SQLException {
+            ps.setByte(index, (byte) 0);
+        }
+    },
+    SHORT(Types.SMALLINT) {
+        @Override
+        void set(PreparedStatement ps, int index, Object value, int scale) throws SQLException {
+            ps.setShort(index, value instanceof Number ? ((Number) value).shortValue() : Short.parseShort(value.toString().trim()));
+        }
+
+        @Override
+        void setDefault(PreparedStatement ps, int index, int scale) throws SQLException {
+            ps.setShort(index, (short) 0);
+        }
+    },
+    INT(Types.INTEGER) {
+        @Override
+        void set(PreparedStatement ps, int index, Object value, int scale) throws SQLException {
+            ps.setInt(index, value instanceof Number ? ((Number) value).intValue() : Integer.parseInt(value.toString().trim()));
+        }
+
+        @Override
+        void setDefault(PreparedStatement ps, int index, int scale) throws SQLException {
+            ps.setInt(index, 0);
+        }
+    },
+    LONG(Types.BIGINT) {
+        @Override
+        void set(PreparedStatement ps, int index, Object value, int scale) throws SQLException {
+            ps.setLong(index, value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString().trim()));
+        }
+
+        @Override
+        void setDefault(PreparedStatement ps, int index, int scale) throws SQLException {
+            ps.setLong(index, 0L);
+        }
+    },
+    FLOAT(Types.REAL) {
+        @Override
+        void set(PreparedStatement ps, int index, Object value, int scale) throws SQLException {
+            ps.setFloat(index, value instanceof Number ? ((Number) value).floatValue() : Float.parseFloat(value.toString().trim()));
+        }
+
+        @Override
+        void setDefault(PreparedStatement ps, int index, int scale) throws SQLException {
+            ps.setFloat(index, 0F);
+        }
+    },
+    DOUBLE(Types.DOUBLE) {
+        @Override
+        void set(PreparedStatement ps, int index, Object value, int scale) throws SQLException {
+            ps.setDouble(index, value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString().trim()));
+        }
+
+        @Override
+        void setDefault(PreparedStatement ps, int index, int scale) throws SQLException {
+            ps.setDouble(index, 0D);
+        }
+    },
+    /**
+     * 兼容以状态字符串(如"1")或"true"表示的布尔值
+     */
+    BOOLEAN(Types.BOOLEAN) {
+        private final String enable = String.valueOf(STATUS_RECORD.ENABLE.ordinal());
+
+        @Override
+        void set(PreparedStatement ps, int index, Object value, int scale) throws SQLException {
+            if (value instanceof Boolean) {
+                ps.setBoolean(index, (Boolean) value);
+                return;
+            }
+            String s = value.toString();
+            ps.setBoolean(index, this.enable.equals(s) || Boolean.TRUE.toString().equalsIgnoreCase(s));
+        }
+
+        @Override
+        void setDefault(PreparedStatement ps, int index, int scale) throws SQLException {
+            ps.setBoolean(index, false);
+        }
+    },
+    STRING(Types.VARCHAR) {
+        @Override
+        void set(PreparedStatement ps, int index, Object value, int scale) throws SQLException {
+            ps.setString(index, value instanceof String ? (String) value : value.toString());
+        }
+
+        @Override
+        void setDefault(PreparedStatement ps, int index, int scale) throws SQLException {
+            ps.setString(index, "");
+        }
+    },
+    BIG_DECIMAL(Types.DECIMAL) {
+        @Override
+        void set(PreparedStatement ps, int index, Object value, int scale) throws SQLException {
+            BigDecimal decimal = value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(value.toString().trim());
+            if (decimal.scale() != scale) {
+                decimal = decimal.setScale(scale, BigDecimal.ROUND_HALF_UP);
+            }
+            ps.setBigDecimal(index, decimal);
+        }
+
+        @Override
+        void setDefault(PreparedStatement ps, int index, int scale) throws SQLException {
+            ps.setBigDecimal(index, BigDecimal.ZERO.setScale(scale, BigDecimal.ROUND_HALF_UP));
+        }
+    },
+    SQL_DATE(Types.DATE) {
+        @Override
+        void set(PreparedStatement ps, int index, Object value, int scale) throws SQLException {
+            ps.setDate(index, value instanceof java.sql.Date ? (java.sql.Date) value : new java.sql.Date(((java.util.Date) value).getTime()));
+        }
+    },
+    TIME(Types.TIME) {
+        @Override
+        void set(PreparedStatement ps, int index, Object value, int scale) throws SQLException {
+            ps.setTime(index, value instanceof Time ? (Time) value : new Time(((java.util.Date) value).getTime()));
+        }
+    },
+    /**
+     * Timestamp及java.util.Date
+     */
+    TIMESTAMP(Types.TIMESTAMP) {
+        @Override
+        void set(PreparedStatement ps, int index, Object value, int scale) throws SQLException {
+            ps.setTimestamp(index, value instanceof Timestamp ? (Timestamp) value : new Timestamp(((java.util.Date) value).getTime()));
+        }
+    },
+    LOCAL_DATE(Types.DATE) {
+        @Override
+        void set(PreparedStatement ps, int index, Object value, int scale) throws SQLException {
+            ps.setDate(index, java.sql.Date.valueOf((LocalDate) value));
+        }
+    },
+    LOCAL_TIME(Types.TIME) {
+        @Override
+        void set(PreparedStatement ps, int index, Object value, int scale) throws SQLException {
+            ps.setTime(index, Time.valueOf((LocalTime) value));
+        }
+    },
+    LOCAL_DATE_TIME(Types.TIMESTAMP) {
+        @Override
+        void set(PreparedStatement ps, int index, Object value, int scale) throws SQLException {
+            ps.setTimestamp(index, Timestamp.valueOf((LocalDateTime) value));
+        }
+    },
+    /**
+     * Instant,OffsetDateTime,ZonedDateTime 按时间点转为Timestamp
+     */
+    INSTANT(Types.TIMESTAMP) {
+        @Override
+        void set(PreparedStatement ps, int index, Object value, int scale) throws SQLException {
+            Instant instant;
+            if (value instanceof Instant) {
+                instant = (Instant) value;
+            } else if (value instanceof OffsetDateTime) {
+                instant = ((OffsetDateTime) value).toInstant();
+            } else {
+                instant = ((ZonedDateTime) value).toInstant();
+            }
+            ps.setTimestamp(index, Timestamp.from(instant));
+        }
+    },
+    BYTES(Types.VARBINARY) {
+        @Override
+        void set(PreparedStatement ps, int index, Object value, int scale) throws SQLException {
+            ps.setBytes(index, (byte[]) value);
+        }
+    },
+    /**
+     * 以枚举名称存储 与changeStatus一致
+     */
+    ENUM(Types.VARCHAR) {
+        @Override
+        void set(PreparedStatement ps, int index, Object value, int scale) throws SQLException {
+            ps.setString(index, value instanceof Enum ? ((Enum<?>) value).name() : value.toString());
+        }
+    },
+    OBJECT(Types.OTHER) {
+        @Override
+        void set(PreparedStatement ps, int index, Object value, int scale) throws SQLException {
+            ps.setObject(index, value);
+        }
+
+        @Override
+        void setNull(PreparedStatement ps, int index) throws SQLException {
+            ps.setObject(index, null);
+        }
+    };
+
+    private static final ClassValue<ParameterBinder> BINDERS = new ClassValue<ParameterBinder>() {
+        @Override
+        protected ParameterBinder computeValue(Class<?> type) {
+            return resolve(type);
+        }
+    };
+
+    private static volatile boolean nullAsDefault;
+
+    private final int sqlType;
+
+    ParameterBinder(int sqlType) {
+        this.sqlType = sqlType;
+    }
+
+    public static boolean isNullAsDefault() {
+        return nullAsDefault;
+    }
+
+    /**
+     * @param nullAsDefault true时null按类型绑定为0,"",false(旧行为) 日期等类型仍为null
+     */
+    public static void setNullAsDefault(boolean nullAsDefault) {
+        ParameterBinder.nullAsDefault = nullAsDefault;
+    }
+
+    /**
+     * @param type 参数类型 为null时按Object绑定
+     * @return
+     */
+    public static ParameterBinder of(Class<?> type) {
+        return type == null ? OBJECT : BINDERS.get(type);
+    }
+
+    public int getSqlType() {
+        return sqlType;
+    }
+
+    public void bind(PreparedStatement ps, int index, Object value, int scale) throws SQLException {
+        if (value != null) {
+            this.set(ps, index, value, scale);
+        } else if (nullAsDefault) {
+            this.setDefault(ps, index, scale);
+        } else {
+            this.setNull(ps, index);
+        }
+    }
+
+    abstract void set(PreparedStatement ps, int index, Object value, int scale) throws SQLException;
+
+    void setDefault(PreparedStatement ps, int index, int scale) throws SQLException {
+        this.setNull(ps, index);
+    }
+
+    void setNull(PreparedStatement ps, int index) throws SQLException {
+        ps.setNull(index, this.sqlType);
+    }
+
+    private static ParameterBinder resolve(Class<?> type) {
+        if (type == int.class || type == Integer.class) {
+            return INT;
+        }
+        if (type == long.class || type == Long.class) {
+            return LONG;
+        }
+        if (type == String.class) {
+            return STRING;
+        }
+        if (type == boolean.class || type == Boolean.class) {
+            return BOOLEAN;
+        }
+        if (type == BigDecimal.class) {
+            return BIG_DECIMAL;
+        }
+        if (type == byte.class || type == Byte.class) {
+            return BYTE;
+        }
+        if (type == short.class || type == Short.class) {
+            return SHORT;
+        }
+        if (type == float.class || type == Float.class) {
+            return FLOAT;
+        }
+        if (type == double.class || type == Double.class) {
+            return DOUBLE;
+        }
+        if (type == java.sql.Date.class) {
+            return SQL_DATE;
+        }
+        if (type == Time.class) {
+            return TIME;
+        }
+        if (java.util.Date.class.isAssignableFrom(type)) {
+            return TIMESTAMP;
+        }
+        if (type == LocalDate.class) {
+            return LOCAL_DATE;
+        }
+        if (type == LocalTime.class) {
+            return LOCAL_TIME;
+        }
+        if (type == LocalDateTime.class) {
+            return LOCAL_DATE_TIME;
+        }
+        if (type == Instant.class || type == OffsetDateTime.class || type == ZonedDateTime.class) {
+            return INSTANT;
+        }
+        if (type == byte[].class) {
+            return BYTES;
+        }
+        if (Enum.class.isAssignableFrom(type)) {
+            return ENUM;
+        }
+        return OBJECT;
+    }
+}
@@ -23,22 +23,28 @@ import com.sparrow.constant.magic.SYMBOL;
 import com.sparrow.container.Container;
 import com.sparrow.core.StrategyFactory;
 import com.sparrow.core.spi.ApplicationContext;
+import com.sparrow.enums.ComparisonOperator;
 import com.sparrow.enums.STATUS_RECORD;
 import com.sparrow.orm.query.SearchCriteria;
 import com.sparrow.orm.query.UpdateCriteria;
 import com.sparrow.orm.query.sql.OperationEntity;
 import com.sparrow.orm.query.sql.CriteriaProcessor;
+import com.sparrow.orm.query.sql.impl.operation.InOperation;
+import com.sparrow.orm.template.BULK_INSERT_MODE;
 import com.sparrow.utility.StringUtility;
 
 import java.lang.reflect.InvocationTargetException;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,6 +70,18 @@ public class PrepareORM<T> {
      * 方法访问对象
      */
     private MethodAccessor methodAccessor = null;
+    /**
+     * 结果集列结构 -> 映射器
+     */
+    private final ConcurrentMap<String, ResultSetMapper<T>> resultSetMappers = new ConcurrentHashMap<String, ResultSetMapper<T>>();
+    /**
+     * 冲突处理方式+单行insert语句 -> {多行insert前缀, 单行占位, 后缀}
+     */
+    private final ConcurrentMap<String, String[]> multiRowInserts = new ConcurrentHashMap<String, String[]>();
+    /**
+     * 变化的列 -> 部分更新语句(含分表占位)
+     */
+    private final ConcurrentMap<String, String> partialUpdates = new ConcurrentHashMap<String, String>();
 
     public MethodAccessor getMethodAccessor() {
         return methodAccessor;
@@ -144,18 +162,120 @@ public class PrepareORM<T> {
         return new JDBCParameter(insertSQL, parameters, isIncrement);
     }
 
+    /**
+     * 将同一SQL(同一分表)的多个单行insert合并为一条多行insert
+     *
+     * @param rows insert(T)的结果 命令必须相同
+     * @param mode 冲突处理方式
+     * @return
+     */
+    public JDBCParameter insert(List<JDBCParameter> rows, BULK_INSERT_MODE mode) {
+        JDBCParameter first = rows.get(0);
+        String[] parts = this.multiRowInsert(first.getCommand(), mode);
+        StringBuilder insert = new StringBuilder(parts[0].length() + rows.size() * (parts[1].length() + 1) + parts[2].length());
+        insert.append(parts[0]);
+        List<Parameter> parameters = new ArrayList<Parameter>(rows.size() * first.getParameters().size());
+        for (int i = 0; i < rows.size(); i++) {
+            if (i > 0) {
+                insert.append(SYMBOL.COMMA);
+            }
+            insert.append(parts[1]);
+            parameters.addAll(rows.get(i).getParameters());
+        }
+        insert.append(parts[2]);
+        return new JDBCParameter(insert.toString(), parameters, first.isAutoIncrement());
+    }
+
+    private String[] multiRowInsert(String insert, BULK_INSERT_MODE mode) {
+        String key = mode.name() + SYMBOL.VERTICAL_LINE + insert;
+        String[] parts = this.multiRowInserts.get(key);
+        if (parts != null) {
+            return parts;
+        }
+        int values = insert.toLowerCase().lastIndexOf("values");
+        if (values < 0 || !insert.trim().regionMatches(true, 0, "insert", 0, 6)) {
+            throw new IllegalArgumentException("unsupported insert " + insert);
+        }
+        String head = insert.substring(0, values).trim();
+        String row = insert.substring(values + "values".length()).trim();
+        String tail = "";
+        if (mode == BULK_INSERT_MODE.INSERT_IGNORE) {
+            head = "insert ignore" + head.substring("insert".length());
+        } else if (mode == BULK_INSERT_MODE.UPSERT) {
+            String primary = this.entityManager.getPrimary().getColumnName();
+            StringBuilder update = new StringBuilder();
+            for (String column : head.substring(head.indexOf('(') + 1, head.lastIndexOf(')')).split(SYMBOL.COMMA)) {
+                column = column.trim();
+                if (column.replace("`", "").equalsIgnoreCase(primary)) {
+                    continue;
+                }
+                if (update.length() > 0) {
+                    update.append(SYMBOL.COMMA);
+                }
+                update.append(column).append("=VALUES(").append(column).append(")");
+            }
+            if (update.length() == 0) {
+                update.append(primary).append(SYMBOL.EQUAL).append(primary);
+            }
+            tail = " on duplicate key update " + update;
+        }
+        parts = new String[] {head + " values ", row, tail};
+        String[] exist = this.multiRowInserts.putIfAbsent(key, parts);
+        return exist != null ? exist : parts;
+    }
+
+    /**
+     * 全列更新
+     *
+     * @param model
+     * @return
+     */
     public JDBCParameter update(T model) {
+        return this.update(model, null);
+    }
+
+    /**
+     * 启用脏字段跟踪且实体有快照时只更新变化的列
+     * <p>
+     * PrepareORM由同一实体的DAO共用，跟踪状态属于各DAO，由调用方传入
+     *
+     * @param model
+     * @param dirtyTracker 为null时全列更新
+     * @return 没有变化的列时返回null
+     */
+    public JDBCParameter update(T model, DirtyTracker<T> dirtyTracker) {
         String updateSQL = this.entityManager.getUpdate();
         List<Parameter> parameters = new ArrayList<Parameter>();
         Parameter whereParameter = null;
         Map<Integer, Object> tableSuffix = new TreeMap<Integer, Object>();
+        Object[] snapshot = dirtyTracker == null ? null : dirtyTracker.get(model);
+        StringBuilder dirtyColumns = snapshot == null ? null : new StringBuilder();
         for (Field field : this.entityManager.getFieldMap().values()) {
             Object o = this.methodAccessor.get(model, field.getName());
             if (field.isPrimary()) {
                 whereParameter = new Parameter(field, o);
+                continue;
+            }
+            int size = parameters.size();
+            //分表字段未变化时也需解析以计算表后缀
+            this.entityManager.parseField(field, parameters, o, tableSuffix, true);
+            if (snapshot == null || parameters.size() == size) {
+                continue;
+            }
+            if (dirtyTracker.isDirty(snapshot, field.getName(), o)) {
+                if (dirtyColumns.length() > 0) {
+                    dirtyColumns.append(SYMBOL.COMMA);
+                }
+                dirtyColumns.append(field.getColumnName());
             } else {
-                this.entityManager.parseField(field, parameters, o, tableSuffix, true);
+                parameters.subList(size, parameters.size()).clear();
+            }
+        }
+        if (snapshot != null) {
+            if (dirtyColumns.length() == 0) {
+                return null;
             }
+            updateSQL = this.partialUpdate(updateSQL, dirtyColumns.toString());
         }
         if (tableSuffix.size() > 0) {
             if (updateSQL.contains(CONSTANT.TABLE_SUFFIX)) {
@@ -166,6 +286,35 @@ public class PrepareORM<T> {
         return new JDBCParameter(updateSQL, parameters, false);
     }
 
+    /**
+     * 表名取自全列update语句 保留分表占位
+     */
+    private String partialUpdate(String updateSQL, String dirtyColumns) {
+        String update = this.partialUpdates.get(dirtyColumns);
+        if (update != null) {
+            return update;
+        }
+        String lower = updateSQL.toLowerCase();
+        int tableStart = lower.indexOf("update") + "update".length();
+        int tableEnd = lower.indexOf(" set ", tableStart);
+        if (tableEnd < 0) {
+            throw new IllegalArgumentException("unsupported update " + updateSQL);
+        }
+        StringBuilder sql = new StringBuilder("update ");
+        sql.append(updateSQL.substring(tableStart, tableEnd).trim()).append(" set ");
+        String[] columns = dirtyColumns.split(SYMBOL.COMMA);
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sql.append(SYMBOL.COMMA);
+            }
+            sql.append(columns[i]).append("=?");
+        }
+        sql.append(" where ").append(this.entityManager.getPrimary().getColumnName()).append("=?");
+        update = sql.toString();
+        String exist = this.partialUpdates.putIfAbsent(dirtyColumns, update);
+        return exist != null ? exist : update;
+    }
+
     public JDBCParameter update(UpdateCriteria criteria) {
         OperationEntity where = this.criteriaProcessor.where(criteria.getWhere());
         OperationEntity setClause = this.criteriaProcessor.setClause(criteria.getSetClausePairList());
@@ -219,19 +368,56 @@ public class PrepareORM<T> {
         return model;
     }
 
-    public T setEntity(ResultSet rs, ResultSetCallback resultSetCallback) {
+    /**
+     * 获取当前结果集列结构对应的映射器 同一结构只构建一次
+     * <p>
+     * 多行读取时应在循环外获取一次，逐行调用ResultSetMapper.map
+     *
+     * @param rs
+     * @return
+     * @throws SQLException
+     */
+    public ResultSetMapper<T> getResultSetMapper(ResultSet rs) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        String shape = ResultSetMapper.shape(metaData);
+        ResultSetMapper<T> mapper = this.resultSetMappers.get(shape);
+        if (mapper != null) {
+            return mapper;
+        }
+        mapper = new ResultSetMapper<T>(this.modelClazz, this.methodAccessor, this.entityManager, metaData);
+        ResultSetMapper<T> exist = this.resultSetMappers.putIfAbsent(shape, mapper);
+        return exist != null ? exist : mapper;
+    }
+
+    /**
+     * 按持久化字段浅拷贝实体 用于缓存的读写隔离
+     *
+     * @param model
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public T copy(T model) {
+        if (model == null) {
+            return null;
+        }
+        T copy;
         try {
-            ResultSetMetaData resultSetMetaData = rs.getMetaData();
-            T model = (T) this.modelClazz.getConstructor().newInstance();
-            for (int i = 1; i <= resultSetMetaData.getColumnCount(); i++) {
-                String fieldName = resultSetMetaData.getColumnName(i);
-                try {
-                    this.getMethodAccessor().set(model, this.getEntityManager().getAttribute(fieldName), rs.getObject(fieldName));
-                } catch (Exception e) {
-                    logger.error(this.modelClazz.getSimpleName() + SYMBOL.VERTICAL_LINE + fieldName, e);
-                }
+            copy = (T) this.modelClazz.getConstructor().newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        for (Field field : this.entityManager.getFieldMap().values()) {
+            if (field == null || !field.isPersistence()) {
+                continue;
             }
-            return model;
+            this.methodAccessor.set(copy, field.getName(), this.methodAccessor.get(model, field.getName()));
+        }
+        return copy;
+    }
+
+    public T setEntity(ResultSet rs, ResultSetCallback resultSetCallback) {
+        try {
+            return this.getResultSetMapper(rs).map(rs);
         } catch (Exception e) {
             throw new RuntimeException(e);
         } finally {
@@ -298,49 +484,45 @@ public class PrepareORM<T> {
     }
 
     public JDBCParameter changeStatus(String primaryKey, STATUS_RECORD status) {
-        String whereClause = null;
-        if (primaryKey.contains(SYMBOL.COMMA)) {
-            whereClause = " in(" + primaryKey + SYMBOL.RIGHT_PARENTHESIS;
-        } else {
-            whereClause = " =?";
-        }
-        String updateSql = String.format("update %1$s set %2$s=? where %3$s %4$s",
+        return this.changeStatus(InOperation.values(primaryKey), status);
+    }
+
+    /**
+     * 主键以?占位绑定 个数补齐规则同InOperation
+     *
+     * @param primaryKeys
+     * @param status
+     * @return
+     */
+    public JDBCParameter changeStatus(List<Object> primaryKeys, STATUS_RECORD status) {
+        Field primaryField = this.entityManager.getPrimary();
+        List<Parameter> keyParameters = InOperation.parameters(primaryField, primaryKeys);
+        String updateSql = String.format("update %1$s set %2$s=? where %3$s",
             this.entityManager.getTableName(),
             this.entityManager.getStatus().getColumnName(),
-            this.entityManager.getPrimary().getColumnName(),
-            whereClause);
-
-        Parameter[] sqlParameters;
-        if (primaryKey.contains(SYMBOL.COMMA)) {
-            sqlParameters = new Parameter[] {
-                new Parameter(this.entityManager.getStatus(), status.name())};
-        } else {
-            sqlParameters = new Parameter[] {
-                new Parameter(this.entityManager.getStatus(), status.name()),
-                new Parameter(this.entityManager.getPrimary(), this.entityManager.getPrimary().convert(primaryKey))};
-        }
-        return new JDBCParameter(updateSql, Arrays.asList(sqlParameters));
+            InOperation.condition(primaryField.getColumnName(), ComparisonOperator.IN, keyParameters.size()));
+        List<Parameter> parameters = new ArrayList<Parameter>(keyParameters.size() + 1);
+        parameters.add(new Parameter(this.entityManager.getStatus(), status.name()));
+        parameters.addAll(keyParameters);
+        return new JDBCParameter(updateSql, parameters);
     }
 
     public JDBCParameter batchDelete(String ids) {
-        String whereClause;
-        if (ids.contains(SYMBOL.COMMA)) {
-            whereClause = " in(" + ids + SYMBOL.RIGHT_PARENTHESIS;
-        } else {
-            whereClause = " =?";
-        }
-        String updateSql = String.format("DELETE FROM %1$s where %2$s %3$s",
+        return this.batchDelete(InOperation.values(ids));
+    }
+
+    /**
+     * 主键以?占位绑定 个数补齐规则同InOperation
+     *
+     * @param ids
+     * @return
+     */
+    public JDBCParameter batchDelete(List<Object> ids) {
+        Field primaryField = this.entityManager.getPrimary();
+        List<Parameter> parameters = InOperation.parameters(primaryField, ids);
+        String deleteSql = String.format("DELETE FROM %1$s where %2$s",
             this.entityManager.getTableName(),
-            this.entityManager.getPrimary().getColumnName(),
-            whereClause);
-
-        Parameter[] sqlParameters = new Parameter[0];
-        if (!ids.contains(SYMBOL.COMMA)) {
-            sqlParameters = new Parameter[] {
-                new Parameter(this.entityManager.getPrimary(),
-                    this.entityManager.getPrimary().convert(ids))
-            };
-        }
-        return new JDBCParameter(updateSql, Arrays.asList(sqlParameters));
+            InOperation.condition(primaryField.getColumnName(), ComparisonOperator.IN, parameters.size()));
+        return new JDBCParameter(deleteSql, parameters);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,325 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm;
+
+import com.sparrow.cg.MethodAccessor;
+import com.sparrow.constant.magic.SYMBOL;
+import com.sparrow.orm.metrics.OrmMetrics;
+
+import java.lang.reflect.Constructor;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 结果集到实体的映射器
+ * <p>
+ * 按(实体,列结构)构建一次，缓存列序号到属性及类型化读取方法的绑定，
+ * 逐行映射时不再读取ResultSetMetaData，也不再按列名查找
+ *
+ * @author harry
+ */
+public class ResultSetMapper<T> {
+    private static Logger logger = LoggerFactory.getLogger(ResultSetMapper.class);
+
+    /**
+     * readRow中未映射或读取失败的列
+     */
+    private static final Object UNREAD = new Object();
+
+    private final Class<?> modelClazz;
+    /**
+     * 指标标签
+     */
+    private final String schema;
+
+    private final String entity;
+
+    private final Constructor<?> constructor;
+
+    private final MethodAccessor methodAccessor;
+    /**
+     * 下标为列序号-1 未映射到实体属性的列为null
+     */
+    private final String[] properties;
+
+    private final ColumnReader[] readers;
+
+    public ResultSetMapper(Class<?> modelClazz, MethodAccessor methodAccessor, EntityManager entityManager,
+        ResultSetMetaData metaData) throws SQLException {
+        this.modelClazz = modelClazz;
+        this.methodAccessor = methodAccessor;
+        this.schema = entityManager.getSchema();
+        this.entity = modelClazz.getSimpleName();
+        try {
+            this.constructor = modelClazz.getConstructor();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(modelClazz.getName() + " default constructor not found", e);
+        }
+        int columnCount = metaData.getColumnCount();
+        this.properties = new String[columnCount];
+        this.readers = new ColumnReader[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            String property = entityManager.getAttribute(metaData.getColumnName(i + 1));
+            Field field = property == null ? null : entityManager.getField(property);
+            this.properties[i] = property;
+            this.readers[i] = ColumnReader.of(field == null ? null : field.getType());
+        }
+    }
+
+    /**
+     * 结果集的列结构 作为映射器缓存的key
+     *
+     * @param metaData
+     * @return
+     * @throws SQLException
+     */
+    public static String shape(ResultSetMetaData metaData) throws SQLException {
+        StringBuilder shape = new StringBuilder();
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            if (i > 1) {
+                shape.append(SYMBOL.COMMA);
+            }
+            shape.append(metaData.getColumnName(i));
+        }
+        return shape.toString();
+    }
+
+    /**
+     * 映射当前行 逐列读取后直接设置到实体，不经过中间数组
+     *
+     * @param rs
+     * @return
+     */
+    public T map(ResultSet rs) {
+        OrmMetrics metrics = JDBCTemplate.activeMetrics();
+        long start = metrics == null ? 0L : System.nanoTime();
+        T model = this.newInstance();
+        for (int i = 0; i < this.properties.length; i++) {
+            if (this.properties[i] == null) {
+                continue;
+            }
+            try {
+                this.methodAccessor.set(model, this.properties[i], this.readers[i].read(rs, i + 1));
+            } catch (Exception e) {
+                logger.error(this.modelClazz.getSimpleName() + SYMBOL.VERTICAL_LINE + this.properties[i], e);
+            }
+        }
+        if (metrics != null) {
+            metrics.rowMapped(this.schema, this.entity, System.nanoTime() - start);
+        }
+        return model;
+    }
+
+    /**
+     * 读取当前行已映射列的原始值 不创建实体，可在读取线程之外水合
+     *
+     * @param rs
+     * @return 下标为列序号-1 未映射或读取失败的列为UNREAD
+     */
+    public Object[] readRow(ResultSet rs) {
+        Object[] row = new Object[this.properties.length];
+        for (int i = 0; i < this.properties.length; i++) {
+            if (this.properties[i] == null) {
+                row[i] = UNREAD;
+                continue;
+            }
+            try {
+                row[i] = this.readers[i].read(rs, i + 1);
+            } catch (Exception e) {
+                row[i] = UNREAD;
+                logger.error(this.modelClazz.getSimpleName() + SYMBOL.VERTICAL_LINE + this.properties[i], e);
+            }
+        }
+        return row;
+    }
+
+    /**
+     * 以readRow读取的值创建实体 线程安全 供并行水合使用
+     *
+     * @param row
+     * @return
+     */
+    public T hydrate(Object[] row) {
+        OrmMetrics metrics = JDBCTemplate.activeMetrics();
+        long start = metrics == null ? 0L : System.nanoTime();
+        T model = this.newInstance();
+        for (int i = 0; i < this.properties.length; i++) {
+            if (row[i] == UNREAD) {
+                continue;
+            }
+            try {
+                this.methodAccessor.set(model, this.properties[i], row[i]);
+            } catch (Exception e) {
+                logger.error(this.modelClazz.getSimpleName() + SYMBOL.VERTICAL_LINE + this.properties[i], e);
+            }
+        }
+        if (metrics != null) {
+            metrics.rowMapped(this.schema, this.entity, System.nanoTime() - start);
+        }
+        return model;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T newInstance() {
+        try {
+            return (T) this.constructor.newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 按属性类型选择的类型化读取方法
+     * <p>
+     * 包装类型在数据库值为null时返回null，基本类型返回默认值
+     */
+    enum ColumnReader {
+        LONG {
+            @Override
+            Object read(ResultSet rs, int index) throws SQLException {
+                return rs.getLong(index);
+            }
+        },
+        LONG_WRAPPER {
+            @Override
+            Object read(ResultSet rs, int index) throws SQLException {
+                long value = rs.getLong(index);
+                return rs.wasNull() ? null : value;
+            }
+        },
+        INT {
+            @Override
+            Object read(ResultSet rs, int index) throws SQLException {
+                return rs.getInt(index);
+            }
+        },
+        INT_WRAPPER {
+            @Override
+            Object read(ResultSet rs, int index) throws SQLException {
+                int value = rs.getInt(index);
+                return rs.wasNull() ? null : value;
+            }
+        },
+        DOUBLE {
+            @Override
+            Object read(ResultSet rs, int index) throws SQLException {
+                return rs.getDouble(index);
+            }
+        },
+        DOUBLE_WRAPPER {
+            @Override
+            Object read(ResultSet rs, int index) throws SQLException {
+                double value = rs.getDouble(index);
+                return rs.wasNull() ? null : value;
+            }
+        },
+        BOOLEAN {
+            @Override
+            Object read(ResultSet rs, int index) throws SQLException {
+                return rs.getBoolean(index);
+            }
+        },
+        BOOLEAN_WRAPPER {
+            @Override
+            Object read(ResultSet rs, int index) throws SQLException {
+                boolean value = rs.getBoolean(index);
+                return rs.wasNull() ? null : value;
+            }
+        },
+        STRING {
+            @Override
+            Object read(ResultSet rs, int index) throws SQLException {
+                return rs.getString(index);
+            }
+        },
+        BIG_DECIMAL {
+            @Override
+            Object read(ResultSet rs, int index) throws SQLException {
+                return rs.getBigDecimal(index);
+            }
+        },
+        DATE {
+            @Override
+            Object read(ResultSet rs, int index) throws SQLException {
+                return rs.getDate(index);
+            }
+        },
+        TIMESTAMP {
+            @Override
+            Object read(ResultSet rs, int index) throws SQLException {
+                return rs.getTimestamp(index);
+            }
+        },
+        OBJECT {
+            @Override
+            Object read(ResultSet rs, int index) throws SQLException {
+                return rs.getObject(index);
+            }
+        };
+
+        abstract Object read(ResultSet rs, int index) throws SQLException;
+
+        static ColumnReader of(Class<?> type) {
+            if (type == null) {
+                return OBJECT;
+            }
+            if (type == long.class) {
+                return LONG;
+            }
+            if (type == Long.class) {
+                return LONG_WRAPPER;
+            }
+            if (type == int.class) {
+                return INT;
+            }
+            if (type == Integer.class) {
+                return INT_WRAPPER;
+            }
+            if (type == double.class) {
+                return DOUBLE;
+            }
+            if (type == Double.class) {
+                return DOUBLE_WRAPPER;
+            }
+            if (type == boolean.class) {
+                return BOOLEAN;
+            }
+            if (type == Boolean.class) {
+                return BOOLEAN_WRAPPER;
+            }
+            if (type == String.class) {
+                return STRING;
+            }
+            if (type == BigDecimal.class) {
+                return BIG_DECIMAL;
+            }
+            if (type == java.sql.Date.class) {
+                return DATE;
+            }
+            if (type == java.sql.Timestamp.class || type == java.util.Date.class) {
+                return TIMESTAMP;
+            }
+            return OBJECT;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 绑定在一个物理连接上的PreparedStatement LRU缓存
+ * <p>
+ * 只由持有该连接的线程访问，无需加锁。语句取出后从缓存移除，归还时再放回，
+ * 保证同一SQL的结果集未关闭时再次执行同一SQL不会复用到同一个语句对象
+ *
+ * @author harry
+ */
+public class StatementCache {
+    private static Logger logger = LoggerFactory.getLogger(StatementCache.class);
+
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+    private static final LongAdder EVICTIONS = new LongAdder();
+
+    private final Connection connection;
+
+    private final LinkedHashMap<Key, PreparedStatement> statements;
+    /**
+     * 已取出未归还的语句
+     */
+    private final Map<Statement, Key> checkedOut = new IdentityHashMap<Statement, Key>();
+
+    StatementCache(Connection connection, final int capacity) {
+        this.connection = connection;
+        this.statements = new LinkedHashMap<Key, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, PreparedStatement> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                EVICTIONS.increment();
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    public static long getHits() {
+        return HITS.sum();
+    }
+
+    public static long getMisses() {
+        return MISSES.sum();
+    }
+
+    public static long getEvictions() {
+        return EVICTIONS.sum();
+    }
+
+    Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * 取出缓存的语句 未命中返回null
+     */
+    PreparedStatement take(String command, int resultSetType, boolean generatedKeys) {
+        Key key = new Key(command, resultSetType, generatedKeys);
+        PreparedStatement preparedStatement = this.statements.remove(key);
+        try {
+            if (preparedStatement != null && preparedStatement.isClosed()) {
+                preparedStatement = null;
+            }
+        } catch (SQLException e) {
+            preparedStatement = null;
+        }
+        if (preparedStatement == null) {
+            MISSES.increment();
+            return null;
+        }
+        HITS.increment();
+        this.checkedOut.put(preparedStatement, key);
+        return preparedStatement;
+    }
+
+    /**
+     * 登记新预编译的语句 归还时进入缓存
+     */
+    void register(PreparedStatement preparedStatement, String command, int resultSetType, boolean generatedKeys) {
+        this.checkedOut.put(preparedStatement, new Key(command, resultSetType, generatedKeys));
+    }
+
+    /**
+     * 归还语句
+     *
+     * @return 非本缓存取出的语句返回false
+     */
+    boolean offer(Statement statement) {
+        Key key = this.checkedOut.remove(statement);
+        if (key == null) {
+            return false;
+        }
+        if (this.statements.containsKey(key)) {
+            closeQuietly(statement);
+            return true;
+        }
+        this.statements.put(key, (PreparedStatement) statement);
+        return true;
+    }
+
+    void close() {
+        Iterator<PreparedStatement> iterator = this.statements.values().iterator();
+        while (iterator.hasNext()) {
+            closeQuietly(iterator.next());
+            iterator.remove();
+        }
+        this.checkedOut.clear();
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            logger.error("close cached statement error", e);
+        }
+    }
+
+    private static class Key {
+        private final String command;
+        private final int resultSetType;
+        private final boolean generatedKeys;
+
+        Key(String command, int resultSetType, boolean generatedKeys) {
+            this.command = command;
+            this.resultSetType = resultSetType;
+            this.generatedKeys = generatedKeys;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return resultSetType == key.resultSetType && generatedKeys == key.generatedKeys && command.equals(key.command);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = command.hashCode();
+            result = 31 * result + resultSetType;
+            result = 31 * result + (generatedKeys ? 1 : 0);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 实体二级缓存 按主键及唯一键缓存单个实体
+ * <p>
+ * 唯一键的旧值在更新后无法得知，因此实体变更时按主键精确失效，唯一键缓存整体清空
+ * <p>
+ * 每次失效版本号加一，读库前取版本号，写入缓存时版本已变化则放弃，避免并发读把失效前的旧值放回缓存。
+ * 失效发生在外部事务提交之前，提交前其他线程读到的旧值仍可能被缓存，因此必须设置过期时间限定旧数据的存活
+ *
+ * @author harry
+ */
+public class EntityCache<T> {
+    private final LruCache<Object, T> primaryCache;
+
+    private final LruCache<UniqueKey, T> uniqueCache;
+
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * @param maxSize   主键及唯一键缓存各自的最大实体数
+     * @param ttlMillis 过期时间 必须大于0
+     */
+    public EntityCache(long maxSize, long ttlMillis) {
+        this(maxSize, ttlMillis, null);
+    }
+
+    /**
+     * @param maxWeight 主键及唯一键缓存各自的权重上限
+     * @param ttlMillis 过期时间 必须大于0
+     * @param weigher   实体权重 如按字节估算 为null时每个实体权重为1
+     */
+    public EntityCache(long maxWeight, long ttlMillis, final LruCache.Weigher<Object, T> weigher) {
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("entity cache ttl must be positive");
+        }
+        this.primaryCache = new LruCache<Object, T>(maxWeight, ttlMillis, weigher);
+        this.uniqueCache = new LruCache<UniqueKey, T>(maxWeight, ttlMillis, weigher == null ? null : new LruCache.Weigher<UniqueKey, T>() {
+            @Override
+            public int weigh(UniqueKey key, T value) {
+                return weigher.weigh(key.value, value);
+            }
+        });
+    }
+
+    public T get(Object primaryKey) {
+        return this.primaryCache.get(primaryKey);
+    }
+
+    public T get(String uniqueKey, Object key) {
+        return this.uniqueCache.get(new UniqueKey(uniqueKey, key));
+    }
+
+    /**
+     * 读库前调用 作为put的版本参数
+     */
+    public long version() {
+        return this.version.get();
+    }
+
+    /**
+     * 读库期间发生失效时不缓存
+     *
+     * @param primaryKey
+     * @param entity
+     * @param version    读库前取得的版本号
+     */
+    public void put(Object primaryKey, T entity, long version) {
+        if (this.version.get() != version) {
+            return;
+        }
+        this.primaryCache.put(primaryKey, entity);
+        //检查与写入之间发生的失效
+        if (this.version.get() != version) {
+            this.primaryCache.invalidate(primaryKey);
+        }
+    }
+
+    public void put(String uniqueKey, Object key, T entity, long version) {
+        if (this.version.get() != version) {
+            return;
+        }
+        UniqueKey cacheKey = new UniqueKey(uniqueKey, key);
+        this.uniqueCache.put(cacheKey, entity);
+        if (this.version.get() != version) {
+            this.uniqueCache.invalidate(cacheKey);
+        }
+    }
+
+    /**
+     * 实体变更后调用
+     *
+     * @param primaryKey
+     */
+    public void invalidate(Object primaryKey) {
+        this.version.incrementAndGet();
+        this.primaryCache.invalidate(primaryKey);
+        this.uniqueCache.invalidateAll();
+    }
+
+    /**
+     * 按条件批量更新或删除等无法确定影响主键时调用
+     */
+    public void invalidateAll() {
+        this.version.incrementAndGet();
+        this.primaryCache.invalidateAll();
+        this.uniqueCache.invalidateAll();
+    }
+
+    public LruCache<Object, T> getPrimaryCache() {
+        return primaryCache;
+    }
+
+    public LruCache<UniqueKey, T> getUniqueCache() {
+        return uniqueCache;
+    }
+
+    public static final class UniqueKey {
+        private final String uniqueKey;
+        private final Object value;
+
+        UniqueKey(String uniqueKey, Object value) {
+            this.uniqueKey = uniqueKey;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof UniqueKey)) {
+                return false;
+            }
+            UniqueKey other = (UniqueKey) o;
+            return uniqueKey.equals(other.uniqueKey) && value.equals(other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * uniqueKey.hashCode() + value.hashCode();
+        }
+    }
+}
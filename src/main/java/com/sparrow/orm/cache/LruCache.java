@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 有界LRU缓存 支持按权重限制容量及过期时间
+ * <p>
+ * 按key的hash分段，每段一个按访问顺序排列的LinkedHashMap并各自加锁，
+ * 段内超出权重上限时淘汰最久未访问的条目
+ *
+ * @author harry
+ */
+public class LruCache<K, V> {
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Segment<K, V>[] segments;
+
+    private final Weigher<K, V> weigher;
+    /**
+     * 小于等于0不过期
+     */
+    private final long ttlNanos;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public LruCache(long maxWeight, long ttlMillis) {
+        this(maxWeight, ttlMillis, null);
+    }
+
+    /**
+     * @param maxWeight 总权重上限 未指定weigher时即条目数上限
+     * @param ttlMillis 写入后的存活时间 小于等于0不过期
+     * @param weigher   条目权重 为null时每条权重为1
+     */
+    @SuppressWarnings("unchecked")
+    public LruCache(long maxWeight, long ttlMillis, Weigher<K, V> weigher) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("max weight must be positive");
+        }
+        this.weigher = weigher;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.segments = new Segment[SEGMENT_COUNT];
+        long segmentWeight = Math.max(1L, maxWeight / SEGMENT_COUNT);
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            this.segments[i] = new Segment<K, V>(segmentWeight);
+        }
+    }
+
+    private Segment<K, V> segment(Object key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return this.segments[hash & (SEGMENT_COUNT - 1)];
+    }
+
+    public V get(K key) {
+        Segment<K, V> segment = this.segment(key);
+        synchronized (segment) {
+            Entry<V> entry = segment.map.get(key);
+            if (entry != null && entry.expireAt != 0L && entry.expireAt - System.nanoTime() <= 0) {
+                segment.map.remove(key);
+                segment.weight -= entry.weight;
+                entry = null;
+            }
+            if (entry == null) {
+                this.misses.increment();
+                return null;
+            }
+            this.hits.increment();
+            return entry.value;
+        }
+    }
+
+    public void put(K key, V value) {
+        int weight = this.weigher == null ? 1 : this.weigher.weigh(key, value);
+        long expireAt = this.ttlNanos > 0 ? System.nanoTime() + this.ttlNanos : 0L;
+        Segment<K, V> segment = this.segment(key);
+        synchronized (segment) {
+            if (weight > segment.maxWeight) {
+                return;
+            }
+            Entry<V> old = segment.map.put(key, new Entry<V>(value, weight, expireAt));
+            if (old != null) {
+                segment.weight -= old.weight;
+            }
+            segment.weight += weight;
+            Iterator<Entry<V>> iterator = segment.map.values().iterator();
+            while (segment.weight > segment.maxWeight && iterator.hasNext()) {
+                Entry<V> eldest = iterator.next();
+                iterator.remove();
+                segment.weight -= eldest.weight;
+                this.evictions.increment();
+            }
+        }
+    }
+
+    public void invalidate(K key) {
+        Segment<K, V> segment = this.segment(key);
+        synchronized (segment) {
+            Entry<V> old = segment.map.remove(key);
+            if (old != null) {
+                segment.weight -= old.weight;
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        for (Segment<K, V> segment : this.segments) {
+            synchronized (segment) {
+                segment.map.clear();
+                segment.weight = 0;
+            }
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment<K, V> segment : this.segments) {
+            synchronized (segment) {
+                size += segment.map.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * 条目权重 如按占用字节估算
+     */
+    public interface Weigher<K, V> {
+        int weigh(K key, V value);
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final int weight;
+        private final long expireAt;
+
+        Entry(V value, int weight, long expireAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private static class Segment<K, V> {
+        private final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+        private final long maxWeight;
+        private long weight;
+
+        Segment(long maxWeight) {
+            this.maxWeight = maxWeight;
+        }
+    }
+}
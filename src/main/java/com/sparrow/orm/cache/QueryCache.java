@@ -0,0 +1,282 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.cache;
+
+import com.sparrow.orm.JDBCParameter;
+import com.sparrow.orm.Parameter;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
+
+/**
+ * 查询结果缓存 以(数据源,SQL,参数值)为key缓存离线结果集
+ * <p>
+ * 按估算字节数淘汰；每个表维护版本号，更新语句涉及的表版本加一，
+ * 命中时任一表版本与写入时不同即视为失效。查询前取版本号，执行期间发生的更新不会被旧结果覆盖。
+ * 失效发生在更新语句执行时而不是事务提交时，提交前其他线程读到并缓存的旧数据只能由ttl淘汰，
+ * 故invalidateOnWrite为true时ttl必须大于0；invalidateOnWrite为false时只按ttl过期(允许短时间的旧数据)
+ * <p>
+ * 可由多个JDBCTemplate共用 表名取SQL中的实际表名，分表后缀各自独立失效
+ * <p>
+ * 缓存的离线结果集只作为只读模板，每次返回其副本，调用方可自行关闭
+ *
+ * @author harry
+ */
+public class QueryCache {
+    private static final Pattern READ_TABLES = Pattern.compile("(?i)\\b(?:from|join)\\s+([`\\w.$]+)");
+
+    private static final Pattern WRITE_TABLE = Pattern.compile("(?i)^\\s*(?:update|insert\\s+(?:ignore\\s+)?into|replace\\s+into|delete\\s+from|truncate\\s+(?:table\\s+)?)\\s*([`\\w.$]+)");
+
+    private final LruCache<Key, Entry> cache;
+
+    private final boolean invalidateOnWrite;
+
+    private final ConcurrentMap<String, AtomicLong> tableVersions = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * @param maxBytes          估算的最大占用字节数
+     * @param ttlMillis         存活时间 小于等于0不过期，invalidateOnWrite为true时必须大于0
+     * @param invalidateOnWrite 更新语句是否使相关表的缓存失效
+     */
+    public QueryCache(long maxBytes, long ttlMillis, boolean invalidateOnWrite) {
+        if (invalidateOnWrite && ttlMillis <= 0) {
+            throw new IllegalArgumentException("query cache ttl must be positive when invalidating on write");
+        }
+        this.invalidateOnWrite = invalidateOnWrite;
+        this.cache = new LruCache<Key, Entry>(maxBytes, ttlMillis, new LruCache.Weigher<Key, Entry>() {
+            @Override
+            public int weigh(Key key, Entry entry) {
+                return entry.bytes;
+            }
+        });
+    }
+
+    /**
+     * 只缓存select语句
+     */
+    public static boolean isCacheable(String command) {
+        int start = 0;
+        while (start < command.length() && Character.isWhitespace(command.charAt(start))) {
+            start++;
+        }
+        return command.regionMatches(true, start, "select", 0, 6);
+    }
+
+    public Key key(String dataSourceKey, JDBCParameter jdbcParameter) {
+        List<Parameter> parameters = jdbcParameter.getParameters();
+        Object[] values = new Object[parameters == null ? 0 : parameters.size()];
+        for (int i = 0; i < values.length; i++) {
+            Parameter parameter = parameters.get(i);
+            values[i] = parameter == null ? null : parameter.getParameterValue();
+        }
+        return new Key(dataSourceKey, jdbcParameter.getCommand(), values);
+    }
+
+    /**
+     * @return 未命中或已失效时返回null 命中时返回结果集副本
+     * (createShared的结果集与原结果集共用行数据 关闭任一个都会清空缓存)
+     */
+    public ResultSet get(Key key) throws SQLException {
+        Entry entry = this.cache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (this.invalidateOnWrite && !Arrays.equals(entry.versions, this.versions(entry.tables))) {
+            this.cache.invalidate(key);
+            return null;
+        }
+        return copy(entry.rowSet);
+    }
+
+    /**
+     * 执行查询前调用 取语句涉及的表及其当前版本
+     */
+    public Snapshot snapshot(String command) {
+        if (!this.invalidateOnWrite) {
+            return new Snapshot(null, null);
+        }
+        List<String> tables = new ArrayList<String>();
+        Matcher matcher = READ_TABLES.matcher(command);
+        while (matcher.find()) {
+            String table = table(matcher.group(1));
+            if (!tables.contains(table)) {
+                tables.add(table);
+            }
+        }
+        String[] tableArray = tables.toArray(new String[0]);
+        return new Snapshot(tableArray, this.versions(tableArray));
+    }
+
+    /**
+     * 将结果集读入离线结果集并缓存 调用方负责关闭原结果集
+     *
+     * @return 供本次调用读取的结果集
+     */
+    public ResultSet put(Key key, Snapshot snapshot, ResultSet rs) throws SQLException {
+        CachedRowSet rowSet = RowSetProvider.newFactory().createCachedRowSet();
+        rowSet.populate(rs);
+        int columns = rowSet.getMetaData().getColumnCount();
+        long bytes = 256L + key.command.length() * 2L + (long) rowSet.size() * columns * 24L;
+        this.cache.put(key, new Entry(rowSet, snapshot.tables, snapshot.versions, (int) Math.min(bytes, Integer.MAX_VALUE)));
+        return copy(rowSet);
+    }
+
+    /**
+     * 副本会带上原结果集的游标位置 需复位
+     */
+    private static ResultSet copy(CachedRowSet rowSet) throws SQLException {
+        CachedRowSet copy = rowSet.createCopy();
+        copy.beforeFirst();
+        return copy;
+    }
+
+    /**
+     * 更新语句执行后调用 使涉及表的缓存失效
+     *
+     * @param command
+     */
+    public void invalidate(String command) {
+        if (!this.invalidateOnWrite || command == null) {
+            return;
+        }
+        Matcher matcher = WRITE_TABLE.matcher(command);
+        if (!matcher.find()) {
+            //无法识别表名的更新(如存储过程) 全部失效
+            this.cache.invalidateAll();
+            return;
+        }
+        this.version(table(matcher.group(1))).incrementAndGet();
+    }
+
+    public void invalidateAll() {
+        this.cache.invalidateAll();
+    }
+
+    public LruCache<Key, Entry> getCache() {
+        return cache;
+    }
+
+    private long[] versions(String[] tables) {
+        if (tables == null) {
+            return null;
+        }
+        long[] versions = new long[tables.length];
+        for (int i = 0; i < tables.length; i++) {
+            versions[i] = this.version(tables[i]).get();
+        }
+        return versions;
+    }
+
+    private AtomicLong version(String table) {
+        AtomicLong version = this.tableVersions.get(table);
+        if (version == null) {
+            version = new AtomicLong();
+            AtomicLong exist = this.tableVersions.putIfAbsent(table, version);
+            if (exist != null) {
+                version = exist;
+            }
+        }
+        return version;
+    }
+
+    /**
+     * 去掉引号及库名前缀
+     */
+    private static String table(String name) {
+        name = name.replace("`", "");
+        int dot = name.lastIndexOf('.');
+        if (dot >= 0) {
+            name = name.substring(dot + 1);
+        }
+        return name.toLowerCase(Locale.ENGLISH);
+    }
+
+    public static final class Key {
+        private final String dataSourceKey;
+        private final String command;
+        private final Object[] values;
+        private final int hash;
+
+        Key(String dataSourceKey, String command, Object[] values) {
+            this.dataSourceKey = dataSourceKey;
+            this.command = command;
+            this.values = values;
+            int hash = dataSourceKey == null ? 0 : dataSourceKey.hashCode();
+            hash = 31 * hash + command.hashCode();
+            this.hash = 31 * hash + Arrays.deepHashCode(values);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return this.hash == other.hash
+                && this.command.equals(other.command)
+                && (this.dataSourceKey == null ? other.dataSourceKey == null : this.dataSourceKey.equals(other.dataSourceKey))
+                && Arrays.deepEquals(this.values, other.values);
+        }
+    }
+
+    /**
+     * 查询前的表版本
+     */
+    public static final class Snapshot {
+        private final String[] tables;
+        private final long[] versions;
+
+        Snapshot(String[] tables, long[] versions) {
+            this.tables = tables;
+            this.versions = versions;
+        }
+    }
+
+    public static final class Entry {
+        private final CachedRowSet rowSet;
+        private final String[] tables;
+        private final long[] versions;
+        private final int bytes;
+
+        Entry(CachedRowSet rowSet, String[] tables, long[] versions, int bytes) {
+            this.rowSet = rowSet;
+            this.tables = tables;
+            this.versions = versions;
+            this.bytes = bytes;
+        }
+    }
+}
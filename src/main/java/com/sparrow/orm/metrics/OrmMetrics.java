@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.metrics;
+
+/**
+ * ORM运行指标
+ * <p>
+ * isEnabled为false时JDBCTemplate及映射器不计时，默认为{@link #NOOP}
+ *
+ * @author harry
+ */
+public interface OrmMetrics {
+    OrmMetrics NOOP = new OrmMetrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void connectionAcquired(String schema, long elapsedNanos) {
+        }
+
+        @Override
+        public void statementPrepared(String schema, String command, long elapsedNanos) {
+        }
+
+        @Override
+        public void statementExecuted(String schema, String command, long elapsedNanos, long rows) {
+        }
+
+        @Override
+        public void rowMapped(String schema, String entity, long elapsedNanos) {
+        }
+    };
+
+    boolean isEnabled();
+
+    /**
+     * 从数据源获取新连接的等待时间
+     */
+    void connectionAcquired(String schema, long elapsedNanos);
+
+    /**
+     * 语句缓存未命中时prepareStatement的耗时
+     *
+     * @param command 参数化的SQL 即语句结构
+     */
+    void statementPrepared(String schema, String command, long elapsedNanos);
+
+    /**
+     * 语句执行完成
+     *
+     * @param command      参数化的SQL 即语句结构
+     * @param elapsedNanos 获取语句、绑定参数及执行的耗时
+     * @param rows         更新语句的影响行数 查询为-1(返回行数在映射时按实体记录)
+     */
+    void statementExecuted(String schema, String command, long elapsedNanos, long rows);
+
+    /**
+     * 一行结果集映射为实体
+     */
+    void rowMapped(String schema, String entity, long elapsedNanos);
+}
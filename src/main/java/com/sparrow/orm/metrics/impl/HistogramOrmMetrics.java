@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.metrics.impl;
+
+import com.sparrow.orm.metrics.OrmMetrics;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 内存直方图指标 按schema及语句结构(或实体)聚合
+ * <p>
+ * 耗时按2的幂分桶，记录只做LongAdder累加，可在生产环境常开；
+ * 语句结构数超过上限后归入{@link #OTHER}，防止拼接SQL撑爆内存
+ *
+ * @author harry
+ */
+public class HistogramOrmMetrics implements OrmMetrics {
+    public static final String OTHER = "other";
+
+    private static final String DEFAULT_SCHEMA = "default";
+
+    private final int maxShapes;
+
+    private final ConcurrentMap<String, Histogram> connections = new ConcurrentHashMap<String, Histogram>();
+
+    private final ConcurrentMap<String, ConcurrentMap<String, Histogram>> prepares = new ConcurrentHashMap<String, ConcurrentMap<String, Histogram>>();
+
+    private final ConcurrentMap<String, ConcurrentMap<String, Histogram>> executions = new ConcurrentHashMap<String, ConcurrentMap<String, Histogram>>();
+
+    private final ConcurrentMap<String, ConcurrentMap<String, Histogram>> mappings = new ConcurrentHashMap<String, ConcurrentMap<String, Histogram>>();
+
+    public HistogramOrmMetrics() {
+        this(1000);
+    }
+
+    /**
+     * @param maxShapes 每个schema记录的最大语句结构数
+     */
+    public HistogramOrmMetrics(int maxShapes) {
+        this.maxShapes = maxShapes;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void connectionAcquired(String schema, long elapsedNanos) {
+        histogram(this.connections, schema(schema), Integer.MAX_VALUE).record(elapsedNanos, -1);
+    }
+
+    @Override
+    public void statementPrepared(String schema, String command, long elapsedNanos) {
+        this.histogram(this.prepares, schema, command).record(elapsedNanos, -1);
+    }
+
+    @Override
+    public void statementExecuted(String schema, String command, long elapsedNanos, long rows) {
+        this.histogram(this.executions, schema, command).record(elapsedNanos, rows);
+    }
+
+    @Override
+    public void rowMapped(String schema, String entity, long elapsedNanos) {
+        this.histogram(this.mappings, schema, entity).record(elapsedNanos, 1);
+    }
+
+    /**
+     * @return schema -> 获取连接耗时
+     */
+    public Map<String, Histogram> getConnections() {
+        return Collections.unmodifiableMap(this.connections);
+    }
+
+    /**
+     * @return schema -> SQL -> 预编译耗时
+     */
+    public Map<String, ? extends Map<String, Histogram>> getPrepares() {
+        return Collections.unmodifiableMap(this.prepares);
+    }
+
+    /**
+     * @return schema -> SQL -> 执行耗时及影响行数
+     */
+    public Map<String, ? extends Map<String, Histogram>> getExecutions() {
+        return Collections.unmodifiableMap(this.executions);
+    }
+
+    /**
+     * @return schema -> 实体 -> 单行映射耗时及映射行数
+     */
+    public Map<String, ? extends Map<String, Histogram>> getMappings() {
+        return Collections.unmodifiableMap(this.mappings);
+    }
+
+    private Histogram histogram(ConcurrentMap<String, ConcurrentMap<String, Histogram>> metrics, String schema,
+        String name) {
+        schema = schema(schema);
+        ConcurrentMap<String, Histogram> histograms = metrics.get(schema);
+        if (histograms == null) {
+            histograms = new ConcurrentHashMap<String, Histogram>();
+            ConcurrentMap<String, Histogram> exist = metrics.putIfAbsent(schema, histograms);
+            if (exist != null) {
+                histograms = exist;
+            }
+        }
+        return histogram(histograms, name, this.maxShapes);
+    }
+
+    private static Histogram histogram(ConcurrentMap<String, Histogram> histograms, String name, int max) {
+        Histogram histogram = histograms.get(name);
+        if (histogram != null) {
+            return histogram;
+        }
+        if (histograms.size() >= max) {
+            name = OTHER;
+        }
+        histogram = new Histogram();
+        Histogram exist = histograms.putIfAbsent(name, histogram);
+        return exist != null ? exist : histogram;
+    }
+
+    private static String schema(String schema) {
+        return schema == null ? DEFAULT_SCHEMA : schema;
+    }
+
+    /**
+     * 以2的幂为桶边界的耗时直方图 第i个桶记录[2^i,2^(i+1))纳秒
+     */
+    public static class Histogram {
+        private final LongAdder[] buckets = new LongAdder[64];
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder totalNanos = new LongAdder();
+
+        private final LongAdder rows = new LongAdder();
+
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+        Histogram() {
+            for (int i = 0; i < this.buckets.length; i++) {
+                this.buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long elapsedNanos, long rows) {
+            if (elapsedNanos < 0) {
+                elapsedNanos = 0;
+            }
+            this.buckets[63 - Long.numberOfLeadingZeros(elapsedNanos | 1L)].increment();
+            this.count.increment();
+            this.totalNanos.add(elapsedNanos);
+            this.maxNanos.accumulate(elapsedNanos);
+            if (rows > 0) {
+                this.rows.add(rows);
+            }
+        }
+
+        public long getCount() {
+            return this.count.sum();
+        }
+
+        public long getTotalNanos() {
+            return this.totalNanos.sum();
+        }
+
+        public long getMaxNanos() {
+            return this.maxNanos.get();
+        }
+
+        /**
+         * @return 影响(或映射)的总行数
+         */
+        public long getRows() {
+            return this.rows.sum();
+        }
+
+        public long getMeanNanos() {
+            long count = this.getCount();
+            return count == 0 ? 0 : this.getTotalNanos() / count;
+        }
+
+        /**
+         * 分位值 取所在桶的上界(不超过最大值)
+         *
+         * @param quantile 0-1 如0.99
+         * @return
+         */
+        public long getPercentileNanos(double quantile) {
+            long[] counts = new long[this.buckets.length];
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = this.buckets[i].sum();
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] > 0) {
+                    long upper = i >= 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+                    return Math.min(upper, this.getMaxNanos());
+                }
+            }
+            return this.getMaxNanos();
+        }
+    }
+}
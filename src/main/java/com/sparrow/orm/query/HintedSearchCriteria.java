@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.query;
+
+/**
+ * 带执行提示的查询条件
+ *
+ * @author harry
+ */
+public class HintedSearchCriteria extends SearchCriteria {
+    /**
+     * 并行水合 读取线程将原始列值按块读出，实体的创建与赋值在ForkJoinPool中并行，结果保持原顺序
+     * <p>
+     * 适用于宽实体的大结果集(如报表)，小结果集的调度开销大于收益
+     */
+    private boolean parallelHydration;
+    /**
+     * 每个并行任务水合的行数
+     */
+    private int hydrationChunkSize = 256;
+
+    public HintedSearchCriteria() {
+        super();
+    }
+
+    public boolean isParallelHydration() {
+        return parallelHydration;
+    }
+
+    public HintedSearchCriteria setParallelHydration(boolean parallelHydration) {
+        this.parallelHydration = parallelHydration;
+        return this;
+    }
+
+    public int getHydrationChunkSize() {
+        return hydrationChunkSize;
+    }
+
+    public HintedSearchCriteria setHydrationChunkSize(int hydrationChunkSize) {
+        this.hydrationChunkSize = hydrationChunkSize;
+        return this;
+    }
+}
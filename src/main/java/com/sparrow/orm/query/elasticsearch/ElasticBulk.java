@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.query.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * bulk请求 每个操作自带_index，分表实体的文档可写入各自的索引
+ *
+ * @author harry
+ */
+public class ElasticBulk {
+    private final StringBuilder body = new StringBuilder();
+
+    private int size;
+
+    /**
+     * @param action index,create,update或delete
+     * @param index  索引名(不含/)
+     * @param id     文档id 为null时由es生成
+     * @param source 文档或update的{"doc":...} delete时为null
+     */
+    public ElasticBulk add(String action, String index, Object id, Object source) {
+        Map<String, Object> meta = new LinkedHashMap<String, Object>();
+        meta.put("_index", index);
+        if (id != null) {
+            meta.put("_id", id.toString());
+        }
+        Json.write(this.body, Collections.singletonMap(action, meta));
+        this.body.append('\n');
+        if (source != null) {
+            Json.write(this.body, source);
+            this.body.append('\n');
+        }
+        this.size++;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getBody() {
+        return body.toString();
+    }
+
+    /**
+     * @param query 查询串 如?refresh=true 可为空串
+     * @return 各操作的结果(status,_id,result,error) 与添加顺序一致
+     */
+    @SuppressWarnings("unchecked")
+    public List<Map<String, Object>> execute(ElasticClient client, String query) {
+        if (this.size == 0) {
+            return Collections.emptyList();
+        }
+        Map<String, Object> response = client.bulk("/_bulk" + query, this.body.toString());
+        List<Map<String, Object>> items = response == null ? null : (List<Map<String, Object>>) response.get("items");
+        if (items == null) {
+            return Collections.emptyList();
+        }
+        List<Map<String, Object>> results = new ArrayList<Map<String, Object>>(items.size());
+        for (Map<String, Object> item : items) {
+            results.add((Map<String, Object>) item.values().iterator().next());
+        }
+        return results;
+    }
+
+    /**
+     * 成功且有实际变更(非noop)
+     */
+    public static boolean succeeded(Map<String, Object> result) {
+        Number status = (Number) result.get("status");
+        return status != null && status.intValue() < 300 && !"noop".equals(result.get("result"));
+    }
+
+    public static boolean conflict(Map<String, Object> result) {
+        Number status = (Number) result.get("status");
+        return status != null && status.intValue() == 409;
+    }
+}
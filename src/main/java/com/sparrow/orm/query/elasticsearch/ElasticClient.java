@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.query.elasticsearch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * elasticsearch HTTP/JSON 客户端
+ * <p>
+ * 地址按schema读取系统属性sparrow.elasticsearch.{schema}.url，
+ * 未配置时读取sparrow.elasticsearch.url，默认http://localhost:9200
+ *
+ * @author harry
+ */
+public class ElasticClient {
+    private static Logger logger = LoggerFactory.getLogger(ElasticClient.class);
+
+    public static final String DEFAULT_URL = "http://localhost:9200";
+
+    private static final ConcurrentHashMap<String, ElasticClient> CLIENTS = new ConcurrentHashMap<String, ElasticClient>();
+
+    private final String url;
+
+    private int connectTimeout = 1000;
+
+    private int readTimeout = 30000;
+
+    public ElasticClient(String url) {
+        this.url = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    public static ElasticClient getInstance(String schema) {
+        String key = schema == null ? "" : schema;
+        ElasticClient client = CLIENTS.get(key);
+        if (client != null) {
+            return client;
+        }
+        String url = System.getProperty("sparrow.elasticsearch.url", DEFAULT_URL);
+        if (schema != null) {
+            url = System.getProperty("sparrow.elasticsearch." + schema + ".url", url);
+        }
+        client = new ElasticClient(url);
+        ElasticClient exist = CLIENTS.putIfAbsent(key, client);
+        return exist != null ? exist : client;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * 发送JSON请求
+     *
+     * @param method HTTP方法
+     * @param path   以/开头的路径(含查询串)
+     * @param body   请求体 可为null
+     * @return 响应JSON 404时返回null
+     */
+    public Map<String, Object> execute(String method, String path, Object body) {
+        return this.execute(method, path, body == null ? null : Json.toJson(body), "application/json");
+    }
+
+    /**
+     * 发送bulk请求 body为换行分隔的JSON(ndjson)
+     */
+    public Map<String, Object> bulk(String path, String body) {
+        return this.execute("POST", path, body, "application/x-ndjson");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> execute(String method, String path, String body, String contentType) {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(this.url + path).openConnection();
+            connection.setRequestMethod(method);
+            connection.setConnectTimeout(this.connectTimeout);
+            connection.setReadTimeout(this.readTimeout);
+            connection.setRequestProperty("Accept", "application/json");
+            if (body != null) {
+                byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", contentType + "; charset=UTF-8");
+                connection.setFixedLengthStreamingMode(bytes.length);
+                OutputStream out = connection.getOutputStream();
+                try {
+                    out.write(bytes);
+                } finally {
+                    out.close();
+                }
+            }
+            int status = connection.getResponseCode();
+            String response = read(status >= 400 ? connection.getErrorStream() : connection.getInputStream());
+            if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                logger.debug("elasticsearch {} {} not found {}", method, path, response);
+                return null;
+            }
+            if (status >= 300) {
+                throw new RuntimeException("elasticsearch " + method + " " + path + " status " + status + " " + response);
+            }
+            if (response.isEmpty()) {
+                return null;
+            }
+            return (Map<String, Object>) Json.parse(response);
+        } catch (IOException e) {
+            // 正常读完响应的连接交由HttpURLConnection的keep-alive复用，仅异常时断开
+            if (connection != null) {
+                connection.disconnect();
+            }
+            throw new RuntimeException("elasticsearch " + method + " " + path, e);
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        if (in == null) {
+            return "";
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                out.write(buffer, 0, length);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } finally {
+            in.close();
+        }
+    }
+}
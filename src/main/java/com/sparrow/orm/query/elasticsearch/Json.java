@@ -0,0 +1,320 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.query.elasticsearch;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * elasticsearch 请求及响应的最小JSON读写
+ * <p>
+ * 对象解析为LinkedHashMap，数组为ArrayList，整数为Long(溢出时BigInteger)，小数为BigDecimal；
+ * 日期序列化为毫秒数(对应es的epoch_millis)；NaN及无穷大不是合法的JSON数值，写为null
+ *
+ * @author harry
+ */
+public final class Json {
+    private Json() {
+    }
+
+    public static String toJson(Object value) {
+        StringBuilder json = new StringBuilder();
+        write(json, value);
+        return json.toString();
+    }
+
+    public static void write(StringBuilder json, Object value) {
+        if (value == null) {
+            json.append("null");
+        } else if (value instanceof String || value instanceof Character) {
+            writeString(json, value.toString());
+        } else if (value instanceof BigDecimal) {
+            json.append(((BigDecimal) value).toPlainString());
+        } else if ((value instanceof Double && !Double.isFinite((Double) value))
+            || (value instanceof Float && !Float.isFinite((Float) value))) {
+            json.append("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            json.append(value);
+        } else if (value instanceof Date) {
+            json.append(((Date) value).getTime());
+        } else if (value instanceof Enum) {
+            writeString(json, ((Enum<?>) value).name());
+        } else if (value instanceof Map) {
+            json.append('{');
+            Iterator<? extends Map.Entry<?, ?>> iterator = ((Map<?, ?>) value).entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<?, ?> entry = iterator.next();
+                writeString(json, String.valueOf(entry.getKey()));
+                json.append(':');
+                write(json, entry.getValue());
+                if (iterator.hasNext()) {
+                    json.append(',');
+                }
+            }
+            json.append('}');
+        } else if (value instanceof Iterable) {
+            json.append('[');
+            Iterator<?> iterator = ((Iterable<?>) value).iterator();
+            while (iterator.hasNext()) {
+                write(json, iterator.next());
+                if (iterator.hasNext()) {
+                    json.append(',');
+                }
+            }
+            json.append(']');
+        } else if (value.getClass().isArray()) {
+            json.append('[');
+            int length = Array.getLength(value);
+            for (int i = 0; i < length; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                write(json, Array.get(value, i));
+            }
+            json.append(']');
+        } else {
+            writeString(json, value.toString());
+        }
+    }
+
+    private static void writeString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    public static Object parse(String json) {
+        Parser parser = new Parser(json);
+        Object value = parser.value();
+        parser.skipBlank();
+        if (parser.index < json.length()) {
+            throw parser.error("unexpected trailing content");
+        }
+        return value;
+    }
+
+    private static class Parser {
+        private final String json;
+        private int index;
+
+        Parser(String json) {
+            this.json = json;
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at " + this.index);
+        }
+
+        char peek() {
+            if (this.index >= this.json.length()) {
+                throw this.error("unexpected end");
+            }
+            return this.json.charAt(this.index);
+        }
+
+        void skipBlank() {
+            while (this.index < this.json.length() && Character.isWhitespace(this.json.charAt(this.index))) {
+                this.index++;
+            }
+        }
+
+        Object value() {
+            this.skipBlank();
+            char c = this.peek();
+            switch (c) {
+                case '{':
+                    return this.object();
+                case '[':
+                    return this.array();
+                case '"':
+                    return this.string();
+                case 't':
+                    return this.literal("true", Boolean.TRUE);
+                case 'f':
+                    return this.literal("false", Boolean.FALSE);
+                case 'n':
+                    return this.literal("null", null);
+                default:
+                    return this.number();
+            }
+        }
+
+        private Object literal(String literal, Object value) {
+            if (!this.json.startsWith(literal, this.index)) {
+                throw this.error("unexpected token");
+            }
+            this.index += literal.length();
+            return value;
+        }
+
+        private Map<String, Object> object() {
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            this.index++;
+            this.skipBlank();
+            if (this.peek() == '}') {
+                this.index++;
+                return map;
+            }
+            while (true) {
+                this.skipBlank();
+                String key = this.string();
+                this.skipBlank();
+                this.expect(':');
+                map.put(key, this.value());
+                this.skipBlank();
+                if (this.peek() == ',') {
+                    this.index++;
+                    continue;
+                }
+                this.expect('}');
+                return map;
+            }
+        }
+
+        private List<Object> array() {
+            List<Object> list = new ArrayList<Object>();
+            this.index++;
+            this.skipBlank();
+            if (this.peek() == ']') {
+                this.index++;
+                return list;
+            }
+            while (true) {
+                list.add(this.value());
+                this.skipBlank();
+                if (this.peek() == ',') {
+                    this.index++;
+                    continue;
+                }
+                this.expect(']');
+                return list;
+            }
+        }
+
+        private void expect(char c) {
+            if (this.index >= this.json.length() || this.json.charAt(this.index) != c) {
+                throw this.error("expected " + c);
+            }
+            this.index++;
+        }
+
+        private String string() {
+            this.expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                if (this.index >= this.json.length()) {
+                    throw this.error("unterminated string");
+                }
+                char c = this.json.charAt(this.index++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                char escape = this.peek();
+                this.index++;
+                switch (escape) {
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'u':
+                        if (this.index + 4 > this.json.length()) {
+                            throw this.error("unexpected end");
+                        }
+                        value.append((char) Integer.parseInt(this.json.substring(this.index, this.index + 4), 16));
+                        this.index += 4;
+                        break;
+                    default:
+                        value.append(escape);
+                }
+            }
+        }
+
+        private Number number() {
+            int start = this.index;
+            boolean decimal = false;
+            while (this.index < this.json.length()) {
+                char c = this.json.charAt(this.index);
+                if (c == '.' || c == 'e' || c == 'E') {
+                    decimal = true;
+                } else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+                    break;
+                }
+                this.index++;
+            }
+            if (start == this.index) {
+                throw this.error("unexpected token");
+            }
+            String number = this.json.substring(start, this.index);
+            if (decimal) {
+                return new BigDecimal(number);
+            }
+            if (number.length() < 19) {
+                return Long.parseLong(number);
+            }
+            BigInteger value = new BigInteger(number);
+            return value.bitLength() < 64 ? (Number) value.longValue() : value;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.query.elasticsearch;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * 逐页拉取_search的命中文档
+ * <p>
+ * 窗口内(offset+limit不超过max_result_window)一次from/size，否则以search_after逐页读取并跳过offset。
+ * 请求体须带sort且以唯一字段兜底，search_after取上一页最后一个命中的sort值
+ *
+ * @author harry
+ */
+public class SearchHits implements Iterator<Map<String, Object>> {
+    private final ElasticClient client;
+    private final String path;
+    private final Map<String, Object> body;
+    private final int maxResultWindow;
+    private final int scrollSize;
+    private long skip;
+    /**
+     * 剩余条数 -1为不限
+     */
+    private long remaining;
+    private Iterator<Map<String, Object>> page = Collections.<Map<String, Object>>emptyList().iterator();
+    private boolean fetched;
+    private boolean exhausted;
+
+    /**
+     * @param index           以/开头的索引(可为通配)
+     * @param body            查询体 会被修改(from,size,search_after)
+     * @param offset          跳过的条数
+     * @param limit           最多返回条数 -1为不限
+     * @param maxResultWindow 与索引的index.max_result_window一致
+     * @param scrollSize      search_after每页条数
+     */
+    public SearchHits(ElasticClient client, String index, Map<String, Object> body, long offset, long limit,
+        int maxResultWindow, int scrollSize) {
+        this.client = client;
+        this.path = index + "/_search";
+        this.body = body;
+        this.skip = offset;
+        this.remaining = limit;
+        this.maxResultWindow = maxResultWindow;
+        this.scrollSize = scrollSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (this.remaining != 0) {
+            if (this.page.hasNext()) {
+                if (this.skip > 0) {
+                    this.page.next();
+                    this.skip--;
+                    continue;
+                }
+                return true;
+            }
+            if (this.exhausted) {
+                return false;
+            }
+            this.fetch();
+        }
+        return false;
+    }
+
+    @Override
+    public Map<String, Object> next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        if (this.remaining > 0) {
+            this.remaining--;
+        }
+        return this.page.next();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void fetch() {
+        long size;
+        if (!this.fetched && this.remaining >= 0 && this.skip + this.remaining <= this.maxResultWindow) {
+            size = this.remaining;
+            this.body.put("from", this.skip);
+            this.skip = 0;
+            this.exhausted = true;
+        } else {
+            size = this.remaining < 0 ? this.scrollSize : Math.min(this.scrollSize, this.skip + this.remaining);
+        }
+        this.fetched = true;
+        this.body.put("size", size);
+        Map<String, Object> response = this.client.execute("POST", this.path, this.body);
+        Object hitsObject = response == null ? null : response.get("hits");
+        List<Map<String, Object>> hits = hitsObject instanceof Map ? (List<Map<String, Object>>) ((Map<String, Object>) hitsObject).get("hits") : null;
+        if (hits == null) {
+            hits = Collections.emptyList();
+        }
+        if (hits.size() < size) {
+            this.exhausted = true;
+        } else if (!hits.isEmpty()) {
+            this.body.put("search_after", hits.get(hits.size() - 1).get("sort"));
+        }
+        this.page = hits.iterator();
+    }
+}
@@ -17,9 +17,253 @@
 
 package com.sparrow.orm.query.elasticsearch.impl;
 
+import com.sparrow.constant.magic.SYMBOL;
+import com.sparrow.enums.ComparisonOperator;
+import com.sparrow.orm.EntityManager;
+import com.sparrow.orm.Field;
+import com.sparrow.orm.query.AGGREGATE;
+import com.sparrow.orm.query.BooleanCriteria;
+import com.sparrow.orm.query.Criteria;
+import com.sparrow.orm.query.CriteriaField;
+import com.sparrow.orm.query.OrderCriteria;
+import com.sparrow.orm.query.SearchCriteria;
+import com.sparrow.orm.query.impl.SimpleCriteriaField;
+import com.sparrow.orm.query.sql.LimitClause;
+import com.sparrow.orm.query.sql.impl.operation.InOperation;
+import com.sparrow.utility.StringUtility;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
+ * 将查询条件翻译为elasticsearch query DSL
+ * <p>
+ * 文档字段名与表的列名一致；条件间的AND/OR按SQL优先级(AND优先)组合为bool查询，
+ * 条件为空值时与SQL实现一样忽略该条件
+ *
  * @author harry
  */
 public class ElasticCriteriaProcessor {
+    public Map<String, Object> query(BooleanCriteria booleanCriteria) {
+        Map<String, Object> query = booleanCriteria == null ? null : this.bool(booleanCriteria);
+        if (query == null) {
+            return object("match_all", new LinkedHashMap<String, Object>());
+        }
+        return query;
+    }
+
+    private Map<String, Object> bool(BooleanCriteria booleanCriteria) {
+        List<List<Map<String, Object>>> orGroups = new ArrayList<List<Map<String, Object>>>();
+        List<Map<String, Object>> andGroup = new ArrayList<Map<String, Object>>();
+        if (booleanCriteria.getCriteriaList() != null) {
+            for (BooleanCriteria.CriteriaLinker linker : booleanCriteria.getCriteriaList()) {
+                Map<String, Object> query = this.criteria(linker.getCriteria());
+                if (query != null) {
+                    andGroup = this.link(orGroups, andGroup, linker.getKey(), query);
+                }
+            }
+        }
+        if (booleanCriteria.getBooleanCriteriaList() != null) {
+            for (BooleanCriteria.BooleanCriteriaLinker linker : booleanCriteria.getBooleanCriteriaList()) {
+                Map<String, Object> query = this.bool(linker.getCriteria());
+                if (query != null) {
+                    andGroup = this.link(orGroups, andGroup, linker.getKey(), query);
+                }
+            }
+        }
+        if (!andGroup.isEmpty()) {
+            orGroups.add(andGroup);
+        }
+        if (orGroups.isEmpty()) {
+            return null;
+        }
+        if (orGroups.size() == 1) {
+            return and(orGroups.get(0));
+        }
+        List<Object> should = new ArrayList<Object>(orGroups.size());
+        for (List<Map<String, Object>> group : orGroups) {
+            should.add(and(group));
+        }
+        Map<String, Object> bool = new LinkedHashMap<String, Object>();
+        bool.put("should", should);
+        bool.put("minimum_should_match", 1);
+        return object("bool", bool);
+    }
+
+    /**
+     * OR开始新的AND组
+     */
+    private List<Map<String, Object>> link(List<List<Map<String, Object>>> orGroups, List<Map<String, Object>> andGroup,
+        BooleanCriteria.RELATION relation, Map<String, Object> query) {
+        if (BooleanCriteria.RELATION.OR.equals(relation) && !andGroup.isEmpty()) {
+            orGroups.add(andGroup);
+            andGroup = new ArrayList<Map<String, Object>>();
+        }
+        andGroup.add(query);
+        return andGroup;
+    }
+
+    private static Map<String, Object> and(List<Map<String, Object>> queries) {
+        if (queries.size() == 1) {
+            return queries.get(0);
+        }
+        // 不参与评分，可被es缓存
+        return object("bool", object("filter", queries));
+    }
+
+    private Map<String, Object> criteria(Criteria criteria) {
+        ComparisonOperator operator = criteria.getCriteriaEntry().getKey();
+        Object value = criteria.getCriteriaEntry().getValue();
+        String column = this.column(criteria.getField());
+        switch (operator) {
+            case IS_NULL:
+                return not(object("exists", object("field", column)));
+            case IS_NOT_NULL:
+                return object("exists", object("field", column));
+            default:
+        }
+        if (StringUtility.isNullOrEmpty(value)) {
+            return null;
+        }
+        switch (operator) {
+            case EQUAL:
+                return object("term", object(column, value));
+            case NOT_EQUAL:
+                return not(object("term", object(column, value)));
+            case GREATER:
+                return object("range", object(column, object("gt", value)));
+            case GREATER_EQUAL:
+                return object("range", object(column, object("gte", value)));
+            case LESS:
+                return object("range", object(column, object("lt", value)));
+            case LESS_EQUAL:
+                return object("range", object(column, object("lte", value)));
+            case IN:
+                return object("terms", object(column, InOperation.values(value)));
+            case NOT_IN:
+                return not(object("terms", object(column, InOperation.values(value))));
+            case START_WITH:
+                return object("prefix", object(column, value.toString()));
+            case END_WITH:
+                return object("wildcard", object(column, "*" + escapeWildcard(value.toString())));
+            case CONTAIN:
+                return object("wildcard", object(column, "*" + escapeWildcard(value.toString()) + "*"));
+            case NOT_CONTAIN:
+                return not(object("wildcard", object(column, "*" + escapeWildcard(value.toString()) + "*")));
+            case MOD:
+                Map<String, Object> params = new LinkedHashMap<String, Object>();
+                params.put("field", column);
+                params.put("mod", criteria.getCriteriaEntry().getMod());
+                params.put("value", Long.valueOf(value.toString()));
+                Map<String, Object> script = new LinkedHashMap<String, Object>();
+                script.put("source", "doc[params.field].size() != 0 && doc[params.field].value % params.mod == params.value");
+                script.put("params", params);
+                return object("script", object("script", script));
+            default:
+                throw new UnsupportedOperationException(operator.name());
+        }
+    }
+
+    private static Map<String, Object> not(Map<String, Object> query) {
+        return object("bool", object("must_not", Collections.singletonList(query)));
+    }
+
+    private static String escapeWildcard(String value) {
+        return value.replace("\\", "\\\\").replace("*", "\\*").replace("?", "\\?");
+    }
+
+    /**
+     * 排序 追加唯一列作为search_after的稳定排序依据
+     *
+     * @param orderCriteriaList
+     * @param tieBreaker        唯一列(通常为主键) 为null时不追加
+     * @return
+     */
+    public List<Object> sort(List<OrderCriteria> orderCriteriaList, String tieBreaker) {
+        List<Object> sort = new ArrayList<Object>();
+        boolean containsTieBreaker = false;
+        if (orderCriteriaList != null) {
+            for (OrderCriteria orderCriteria : orderCriteriaList) {
+                String column = this.column(orderCriteria.getField());
+                containsTieBreaker |= column.equals(tieBreaker);
+                sort.add(object(column, object("order", orderCriteria.getOrder().name().toLowerCase())));
+            }
+        }
+        if (tieBreaker != null && !containsTieBreaker) {
+            sort.add(object(tieBreaker, object("order", "asc")));
+        }
+        return sort;
+    }
+
+    /**
+     * 单值聚合 结果在aggregations.{name}.value
+     */
+    public Map<String, Object> aggregation(String name, AGGREGATE aggregate, String field) {
+        String column = this.column(new SimpleCriteriaField(field));
+        String type;
+        switch (aggregate) {
+            case COUNT:
+                type = "value_count";
+                break;
+            case SUM:
+                type = "sum";
+                break;
+            case AVG:
+                type = "avg";
+                break;
+            case MAX:
+                type = "max";
+                break;
+            case MIN:
+                type = "min";
+                break;
+            default:
+                throw new UnsupportedOperationException(aggregate.name());
+        }
+        return object(name, object(type, object("field", column)));
+    }
+
+    /**
+     * 查询字段对应的列 用于_source过滤
+     *
+     * @param fields 逗号分隔的alias.field
+     * @return 未指定字段时返回null(返回全部)
+     */
+    public List<String> fields(String fields) {
+        if (StringUtility.isNullOrEmpty(fields) || SYMBOL.STAR.equals(fields.trim())) {
+            return null;
+        }
+        List<String> columns = new ArrayList<String>();
+        for (String field : fields.split(SYMBOL.COMMA)) {
+            columns.add(this.column(new SimpleCriteriaField(field.trim())));
+        }
+        return columns;
+    }
+
+    public String column(CriteriaField criteriaField) {
+        Field field = EntityManager.get(criteriaField.getAlias()).getField(criteriaField.getName());
+        if (field == null) {
+            throw new IllegalArgumentException(criteriaField.getAlias() + SYMBOL.DOT + criteriaField.getName() + " not found");
+        }
+        return field.getColumnName();
+    }
+
+    /**
+     * 解析分页
+     *
+     * @param searchCriteria
+     * @return {offset, limit} 不分页时limit为-1
+     */
+    public long[] page(SearchCriteria searchCriteria) {
+        return LimitClause.parse(searchCriteria);
+    }
 
+    private static Map<String, Object> object(String key, Object value) {
+        Map<String, Object> object = new LinkedHashMap<String, Object>(2);
+        object.put(key, value);
+        return object;
+    }
 }
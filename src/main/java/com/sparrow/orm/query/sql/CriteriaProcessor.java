@@ -17,6 +17,7 @@
 
 package com.sparrow.orm.query.sql;
 
+import com.sparrow.orm.Field;
 import com.sparrow.orm.query.AGGREGATE;
 import com.sparrow.orm.query.BooleanCriteria;
 import com.sparrow.orm.query.OrderCriteria;
@@ -36,4 +37,14 @@ public interface CriteriaProcessor {
     OperationEntity setClause(List<UpdateSetClausePair> setClausePairs);
 
     String aggregate(AGGREGATE aggregate, String field);
+
+    /**
+     * keyset分页条件 取排序上位于lastValues之后的行
+     *
+     * @param orderCriteriaList 排序
+     * @param tieBreaker        追加在排序末尾的唯一列(升序) 为null时不追加
+     * @param lastValues        上一页最后一行在排序列(含tieBreaker)上的值
+     * @return
+     */
+    OperationEntity keyset(List<OrderCriteria> orderCriteriaList, Field tieBreaker, List<Object> lastValues);
 }
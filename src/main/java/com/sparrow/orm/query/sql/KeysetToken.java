@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.query.sql;
+
+import com.sparrow.constant.magic.SYMBOL;
+import com.sparrow.orm.Field;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * keyset分页的续页标记 对调用方不透明
+ * <p>
+ * 内容为排序列及上一页最后一行实体在这些列上的属性值，解码时按属性类型还原；
+ * 排序列与编码时不一致的标记视为无效
+ *
+ * @author harry
+ */
+public final class KeysetToken {
+    private KeysetToken() {
+    }
+
+    public static String encode(List<Field> fields, List<Object> values) {
+        StringBuilder token = new StringBuilder(shape(fields)).append('\n');
+        for (int i = 0; i < fields.size(); i++) {
+            Object value = values.get(i);
+            if (value == null) {
+                throw new IllegalStateException("keyset column " + fields.get(i).getColumnName() + " is null");
+            }
+            String text;
+            if (value instanceof java.util.Date) {
+                text = String.valueOf(((java.util.Date) value).getTime());
+            } else if (value instanceof BigDecimal) {
+                text = ((BigDecimal) value).toPlainString();
+            } else {
+                text = value.toString();
+            }
+            token.append(text.length()).append(SYMBOL.COLON).append(text);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static List<Object> decode(List<Field> fields, String token) {
+        String content;
+        try {
+            content = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("invalid continuation token", e);
+        }
+        int index = content.indexOf('\n');
+        if (index < 0 || !content.substring(0, index).equals(shape(fields))) {
+            throw new IllegalArgumentException("continuation token does not match order");
+        }
+        index++;
+        List<Object> values = new ArrayList<Object>(fields.size());
+        try {
+            for (Field field : fields) {
+                int colon = content.indexOf(SYMBOL.COLON, index);
+                int length = Integer.parseInt(content.substring(index, colon));
+                String text = content.substring(colon + 1, colon + 1 + length);
+                index = colon + 1 + length;
+                values.add(value(field, text));
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("invalid continuation token", e);
+        }
+        return values;
+    }
+
+    private static Object value(Field field, String text) {
+        Class<?> type = field.getType();
+        if (type == String.class) {
+            return text;
+        }
+        if (type == java.sql.Timestamp.class) {
+            return new java.sql.Timestamp(Long.parseLong(text));
+        }
+        if (type == java.sql.Date.class) {
+            return new java.sql.Date(Long.parseLong(text));
+        }
+        if (type == java.util.Date.class) {
+            return new java.util.Date(Long.parseLong(text));
+        }
+        if (type == LocalDateTime.class) {
+            return LocalDateTime.parse(text);
+        }
+        if (type == LocalDate.class) {
+            return LocalDate.parse(text);
+        }
+        if (type == LocalTime.class) {
+            return LocalTime.parse(text);
+        }
+        return field.convert(text);
+    }
+
+    private static String shape(List<Field> fields) {
+        StringBuilder shape = new StringBuilder();
+        for (Field field : fields) {
+            if (shape.length() > 0) {
+                shape.append(SYMBOL.COMMA);
+            }
+            shape.append(field.getColumnName());
+        }
+        return shape.toString();
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.query.sql;
+
+import com.sparrow.constant.magic.DIGIT;
+import com.sparrow.orm.query.SearchCriteria;
+import com.sparrow.utility.StringUtility;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 解析SearchCriteria的分页 limit offset,size / limit size offset offset / limit size
+ *
+ * @author harry
+ */
+public final class LimitClause {
+    private static final Pattern LIMIT = Pattern.compile("limit\\s+(\\d+)\\s*(?:,\\s*(\\d+)|offset\\s+(\\d+))?", Pattern.CASE_INSENSITIVE);
+
+    private LimitClause() {
+    }
+
+    /**
+     * @param searchCriteria
+     * @return {offset, limit} 不分页时limit为-1
+     */
+    public static long[] parse(SearchCriteria searchCriteria) {
+        if (searchCriteria == null || StringUtility.isNullOrEmpty(searchCriteria.getPageSize())
+            || searchCriteria.getPageSize() == DIGIT.ALL) {
+            return new long[] {0, -1};
+        }
+        String limitClause = searchCriteria.getLimitClause();
+        Matcher matcher = limitClause == null ? null : LIMIT.matcher(limitClause);
+        if (matcher == null || !matcher.find()) {
+            return new long[] {0, searchCriteria.getPageSize()};
+        }
+        long first = Long.parseLong(matcher.group(1));
+        if (matcher.group(2) != null) {
+            return new long[] {first, Long.parseLong(matcher.group(2))};
+        }
+        if (matcher.group(3) != null) {
+            return new long[] {Long.parseLong(matcher.group(3)), first};
+        }
+        return new long[] {0, first};
+    }
+}
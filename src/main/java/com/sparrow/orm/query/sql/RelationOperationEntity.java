@@ -18,6 +18,8 @@
 package com.sparrow.orm.query.sql;
 
 import com.sparrow.orm.Parameter;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * @author by harry
@@ -25,12 +27,21 @@ import com.sparrow.orm.Parameter;
 public class RelationOperationEntity {
     private String criteria;
     private Parameter parameter;
+    /**
+     * 多参数条件(如IN)的参数列表
+     */
+    private List<Parameter> parameterList;
 
     public RelationOperationEntity(String criteria, Parameter parameter) {
         this.criteria = criteria;
         this.parameter = parameter;
     }
 
+    public RelationOperationEntity(String criteria, List<Parameter> parameterList) {
+        this.criteria = criteria;
+        this.parameterList = parameterList;
+    }
+
     public String getCriteria() {
         return criteria;
     }
@@ -46,4 +57,18 @@ public class RelationOperationEntity {
     public void setParameter(Parameter parameter) {
         this.parameter = parameter;
     }
+
+    public List<Parameter> getParameterList() {
+        if (parameterList != null) {
+            return parameterList;
+        }
+        if (parameter == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(parameter);
+    }
+
+    public void setParameterList(List<Parameter> parameterList) {
+        this.parameterList = parameterList;
+    }
 }
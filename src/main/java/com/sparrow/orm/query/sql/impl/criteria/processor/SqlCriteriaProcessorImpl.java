@@ -19,9 +19,11 @@ package com.sparrow.orm.query.sql.impl.criteria.processor;
 
 import com.sparrow.constant.magic.SYMBOL;
 import com.sparrow.enums.ComparisonOperator;
+import com.sparrow.enums.ORDER;
 import com.sparrow.orm.EntityManager;
 import com.sparrow.orm.Field;
 import com.sparrow.orm.Parameter;
+import com.sparrow.orm.cache.LruCache;
 import com.sparrow.orm.query.AGGREGATE;
 import com.sparrow.orm.query.BooleanCriteria;
 import com.sparrow.orm.query.Criteria;
@@ -39,15 +41,39 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
+ * where/order/fields 按条件结构缓存生成的SQL
+ * <p>
+ * 结构(字段,操作符,连接符,是否有值)相同而仅参数值不同的条件，只在第一次生成SQL，
+ * 之后按缓存的参数计划直接绑定参数值，SQL文本保持稳定以利用服务端预编译缓存
+ *
  * @author harry
  */
 public class SqlCriteriaProcessorImpl implements CriteriaProcessor {
+    /**
+     * 每类缓存的最大结构数，超出后淘汰最久未使用的结构
+     */
+    private static final int MAX_CACHED_SHAPES = 1024;
+
+    private static final LruCache<String, CompiledWhere> WHERE_CACHE = new LruCache<String, CompiledWhere>(MAX_CACHED_SHAPES, 0);
+
+    private static final LruCache<String, String> FIELDS_CACHE = new LruCache<String, String>(MAX_CACHED_SHAPES, 0);
+
+    private static final LruCache<String, String> ORDER_CACHE = new LruCache<String, String>(MAX_CACHED_SHAPES, 0);
 
     @Override
     public String fields(String fields) {
         if (StringUtility.isNullOrEmpty(fields)) {
             return SYMBOL.STAR;
         }
+        String columns = FIELDS_CACHE.get(fields);
+        if (columns == null) {
+            columns = this.compileFields(fields);
+            FIELDS_CACHE.put(fields, columns);
+        }
+        return columns;
+    }
+
+    private String compileFields(String fields) {
         if (fields.contains(SYMBOL.COMMA)) {
             String[] fieldArray = fields.split(SYMBOL.COMMA);
             StringBuilder fieldBuilder = new StringBuilder();
@@ -68,6 +94,78 @@ public class SqlCriteriaProcessorImpl implements CriteriaProcessor {
 
     @Override
     public OperationEntity where(BooleanCriteria booleanCriteria) {
+        StringBuilder shape = new StringBuilder();
+        List<Criteria> parameterCriteria = new ArrayList<Criteria>();
+        if (!this.shape(booleanCriteria, shape, parameterCriteria)) {
+            return this.compileWhere(booleanCriteria);
+        }
+        String key = shape.toString();
+        CompiledWhere compiledWhere = WHERE_CACHE.get(key);
+        if (compiledWhere == null) {
+            OperationEntity operationEntity = this.compileWhere(booleanCriteria);
+            compiledWhere = new CompiledWhere(operationEntity.getClause().toString(), parameterCriteria);
+            if (operationEntity.getParameterList().size() == compiledWhere.parameters(parameterCriteria).size()) {
+                WHERE_CACHE.put(key, compiledWhere);
+            }
+            return operationEntity;
+        }
+        return new OperationEntity(new StringBuilder(compiledWhere.clause), compiledWhere.parameters(parameterCriteria));
+    }
+
+    /**
+     * 生成条件结构的key，并按SQL参数顺序收集带参数的条件
+     *
+     * @return 包含无法缓存的条件时返回false
+     */
+    private boolean shape(BooleanCriteria booleanCriteria, StringBuilder shape, List<Criteria> parameterCriteria) {
+        shape.append(SYMBOL.LEFT_PARENTHESIS);
+        if (booleanCriteria.getCriteriaList() != null) {
+            for (BooleanCriteria.CriteriaLinker linker : booleanCriteria.getCriteriaList()) {
+                Criteria criteria = linker.getCriteria();
+                ComparisonOperator operator = criteria.getCriteriaEntry().getKey();
+                if (!operator.equals(ComparisonOperator.IS_NULL) && !operator.equals(ComparisonOperator.IS_NOT_NULL)) {
+                    if (StringUtility.isNullOrEmpty(criteria.getCriteriaEntry().getValue())) {
+                        continue;
+                    }
+                    parameterCriteria.add(criteria);
+                }
+                shape.append(linker.getKey());
+                shape.append(SYMBOL.BLANK);
+                if (criteria.isAlias()) {
+                    shape.append(SYMBOL.DOT);
+                }
+                shape.append(criteria.getField().getAlias());
+                shape.append(SYMBOL.DOT);
+                shape.append(criteria.getField().getName());
+                shape.append(SYMBOL.BLANK);
+                shape.append(operator.name());
+                if (operator.equals(ComparisonOperator.MOD)) {
+                    shape.append(SYMBOL.BLANK);
+                    shape.append(criteria.getCriteriaEntry().getMod());
+                }
+                if (isIn(operator)) {
+                    // 占位符个数及拆分方式由补齐后的参数个数和列表上限决定
+                    shape.append(SYMBOL.BLANK);
+                    shape.append(InOperation.parameterCount(InOperation.values(criteria.getCriteriaEntry().getValue()).size()));
+                    shape.append(SYMBOL.DOT);
+                    shape.append(InOperation.getMaxInSize());
+                }
+                shape.append(SYMBOL.COMMA);
+            }
+        }
+        if (booleanCriteria.getBooleanCriteriaList() != null) {
+            for (BooleanCriteria.BooleanCriteriaLinker linker : booleanCriteria.getBooleanCriteriaList()) {
+                shape.append(linker.getKey());
+                if (!this.shape(linker.getCriteria(), shape, parameterCriteria)) {
+                    return false;
+                }
+            }
+        }
+        shape.append(SYMBOL.RIGHT_PARENTHESIS);
+        return true;
+    }
+
+    private OperationEntity compileWhere(BooleanCriteria booleanCriteria) {
         OperationEntity operationEntity = new OperationEntity();
         if (booleanCriteria.getCriteriaList() != null && booleanCriteria.getCriteriaList().size() > 0) {
 
@@ -114,9 +212,7 @@ public class SqlCriteriaProcessorImpl implements CriteriaProcessor {
                 }
                 whereClause.append(SYMBOL.BLANK);
                 whereClause.append(relationOperationEntity.getCriteria());
-                if (relationOperationEntity.getParameter() != null) {
-                    parameters.add(relationOperationEntity.getParameter());
-                }
+                parameters.addAll(relationOperationEntity.getParameterList());
             }
             if (whereClause.length() > 1) {
                 whereClause.insert(0, SYMBOL.LEFT_PARENTHESIS);
@@ -128,7 +224,7 @@ public class SqlCriteriaProcessorImpl implements CriteriaProcessor {
         if (booleanCriteria.getBooleanCriteriaList() != null && booleanCriteria.getBooleanCriteriaList().size() > 0) {
             List<BooleanCriteria.BooleanCriteriaLinker> boolOperationEntityList = booleanCriteria.getBooleanCriteriaList();
             for (BooleanCriteria.BooleanCriteriaLinker linker : boolOperationEntityList) {
-                OperationEntity oe = this.where(linker.getCriteria());
+                OperationEntity oe = this.compileWhere(linker.getCriteria());
                 if (oe != null && !StringUtility.isNullOrEmpty(oe.getClause())) {
                     if (linker.getKey() != null) {
                         operationEntity.getClause().append(linker.getKey().name());
@@ -145,6 +241,24 @@ public class SqlCriteriaProcessorImpl implements CriteriaProcessor {
         if (orderCriteriaList == null || orderCriteriaList.size() == 0) {
             return SYMBOL.BLANK;
         }
+        StringBuilder key = new StringBuilder();
+        for (OrderCriteria orderCriteria : orderCriteriaList) {
+            key.append(orderCriteria.getField().getAlias());
+            key.append(SYMBOL.DOT);
+            key.append(orderCriteria.getField().getName());
+            key.append(SYMBOL.BLANK);
+            key.append(orderCriteria.getOrder().name());
+            key.append(SYMBOL.COMMA);
+        }
+        String order = ORDER_CACHE.get(key.toString());
+        if (order == null) {
+            order = this.compileOrder(orderCriteriaList);
+            ORDER_CACHE.put(key.toString(), order);
+        }
+        return order;
+    }
+
+    private String compileOrder(List<OrderCriteria> orderCriteriaList) {
         StringBuilder sb = new StringBuilder();
         for (OrderCriteria orderCriteria : orderCriteriaList) {
             if (sb.length() > 0) {
@@ -197,4 +311,109 @@ public class SqlCriteriaProcessorImpl implements CriteriaProcessor {
                 return "";
         }
     }
+
+    /**
+     * 排序方向一致时生成行值比较 (a,b) > (?,?)，否则展开为 a > ? OR (a = ? AND b > ?)
+     */
+    @Override
+    public OperationEntity keyset(List<OrderCriteria> orderCriteriaList, Field tieBreaker, List<Object> lastValues) {
+        List<Field> fields = new ArrayList<Field>();
+        List<Boolean> descending = new ArrayList<Boolean>();
+        if (orderCriteriaList != null) {
+            for (OrderCriteria orderCriteria : orderCriteriaList) {
+                CriteriaField criteriaField = orderCriteria.getField();
+                Field field = EntityManager.get(criteriaField.getAlias()).getField(criteriaField.getName());
+                if (field == null) {
+                    throw new IllegalArgumentException(criteriaField.getAlias() + SYMBOL.DOT + criteriaField.getName() + " not found");
+                }
+                fields.add(field);
+                descending.add(ORDER.DESC.equals(orderCriteria.getOrder()));
+            }
+        }
+        if (tieBreaker != null) {
+            fields.add(tieBreaker);
+            descending.add(false);
+        }
+        if (fields.isEmpty() || fields.size() != lastValues.size()) {
+            throw new IllegalArgumentException("keyset values do not match order columns");
+        }
+        boolean sameDirection = true;
+        for (Boolean desc : descending) {
+            sameDirection &= desc.equals(descending.get(0));
+        }
+        StringBuilder clause = new StringBuilder(SYMBOL.LEFT_PARENTHESIS);
+        List<Parameter> parameters = new ArrayList<Parameter>();
+        if (sameDirection) {
+            StringBuilder columns = new StringBuilder();
+            StringBuilder placeholders = new StringBuilder();
+            for (int i = 0; i < fields.size(); i++) {
+                if (i > 0) {
+                    columns.append(SYMBOL.COMMA);
+                    placeholders.append(SYMBOL.COMMA);
+                }
+                columns.append(fields.get(i).getColumnName());
+                placeholders.append("?");
+                parameters.add(new Parameter(fields.get(i), lastValues.get(i)));
+            }
+            String operator = descending.get(0) ? " < " : " > ";
+            if (fields.size() == 1) {
+                clause.append(columns).append(operator).append(placeholders);
+            } else {
+                clause.append(SYMBOL.LEFT_PARENTHESIS).append(columns).append(SYMBOL.RIGHT_PARENTHESIS)
+                    .append(operator)
+                    .append(SYMBOL.LEFT_PARENTHESIS).append(placeholders).append(SYMBOL.RIGHT_PARENTHESIS);
+            }
+        } else {
+            for (int i = 0; i < fields.size(); i++) {
+                if (i > 0) {
+                    clause.append(" OR ");
+                }
+                clause.append(SYMBOL.LEFT_PARENTHESIS);
+                for (int j = 0; j < i; j++) {
+                    clause.append(fields.get(j).getColumnName()).append(" = ? AND ");
+                    parameters.add(new Parameter(fields.get(j), lastValues.get(j)));
+                }
+                clause.append(fields.get(i).getColumnName()).append(descending.get(i) ? " < ?" : " > ?");
+                parameters.add(new Parameter(fields.get(i), lastValues.get(i)));
+                clause.append(SYMBOL.RIGHT_PARENTHESIS);
+            }
+        }
+        clause.append(SYMBOL.RIGHT_PARENTHESIS);
+        return new OperationEntity(clause, parameters);
+    }
+
+    private static boolean isIn(ComparisonOperator operator) {
+        return operator.equals(ComparisonOperator.IN) || operator.equals(ComparisonOperator.NOT_IN);
+    }
+
+    /**
+     * 已生成的where子句及参数计划(第i个带参数的条件对应的字段)
+     */
+    private static class CompiledWhere {
+        private final String clause;
+        private final Field[] fields;
+
+        CompiledWhere(String clause, List<Criteria> parameterCriteria) {
+            this.clause = clause;
+            this.fields = new Field[parameterCriteria.size()];
+            for (int i = 0; i < this.fields.length; i++) {
+                CriteriaField criteriaField = parameterCriteria.get(i).getField();
+                this.fields[i] = EntityManager.get(criteriaField.getAlias()).getField(criteriaField.getName());
+            }
+        }
+
+        List<Parameter> parameters(List<Criteria> parameterCriteria) {
+            List<Parameter> parameters = new ArrayList<Parameter>(this.fields.length);
+            for (int i = 0; i < this.fields.length; i++) {
+                Criteria criteria = parameterCriteria.get(i);
+                Object value = criteria.getCriteriaEntry().getValue();
+                if (isIn(criteria.getCriteriaEntry().getKey())) {
+                    parameters.addAll(InOperation.parameters(this.fields[i], InOperation.values(value)));
+                } else {
+                    parameters.add(new Parameter(this.fields[i], value));
+                }
+            }
+            return parameters;
+        }
+    }
 }
@@ -18,76 +18,170 @@
 package com.sparrow.orm.query.sql.impl.operation;
 
 import com.sparrow.constant.magic.SYMBOL;
+import com.sparrow.enums.ComparisonOperator;
 import com.sparrow.orm.EntityManager;
+import com.sparrow.orm.Field;
+import com.sparrow.orm.Parameter;
 import com.sparrow.orm.query.Criteria;
 import com.sparrow.orm.query.sql.RelationOperationEntity;
 import com.sparrow.orm.query.sql.RelationalOperation;
-import com.sparrow.utility.StringUtility;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
+ * IN/NOT IN 的值以?占位绑定
+ * <p>
+ * 参数个数补齐到2的幂(以最后一个值填充，不改变语义)，使不同长度的列表只产生有限的几种SQL；
+ * 超过单个列表上限时拆分为多个列表，IN以OR连接，NOT IN以AND连接
+ *
  * @author harry
  */
 public class InOperation implements RelationalOperation {
-    private <T> String join(Iterable<T> iterable) {
-        StringBuilder sb = new StringBuilder();
-        for (Object key : iterable) {
-            if (sb.length() > 0) {
-                sb.append(SYMBOL.COMMA);
-            }
-            if (key instanceof Number) {
-                sb.append(key);
-                continue;
-            }
-            sb.append('\'');
-            sb.append(key);
-            sb.append('\'');
+    /**
+     * 单个IN列表最多绑定的参数个数
+     */
+    private static volatile int maxInSize = 1000;
+
+    public static int getMaxInSize() {
+        return maxInSize;
+    }
+
+    public static void setMaxInSize(int maxInSize) {
+        if (maxInSize < 1) {
+            throw new IllegalArgumentException("max in size must be positive");
         }
-        return sb.toString();
+        InOperation.maxInSize = maxInSize;
     }
 
-    private String join(Object[] array) {
-        StringBuilder sb = new StringBuilder();
-        for (Object key : array) {
-            if (sb.length() > 0) {
-                sb.append(SYMBOL.COMMA);
+    /**
+     * 将条件值展开为值列表 支持逗号分隔的字符串、数组及Iterable
+     *
+     * @param iterable
+     * @return
+     */
+    public static List<Object> values(Object iterable) {
+        List<Object> values = new ArrayList<Object>();
+        if (iterable instanceof String) {
+            for (String value : ((String) iterable).split(SYMBOL.COMMA)) {
+                value = value.trim();
+                if (value.length() > 1 && value.startsWith(SYMBOL.SINGLE_QUOTES) && value.endsWith(SYMBOL.SINGLE_QUOTES)) {
+                    value = value.substring(1, value.length() - 1);
+                }
+                if (!value.isEmpty()) {
+                    values.add(value);
+                }
             }
-            if (key instanceof Number) {
-                sb.append(key);
-                continue;
+        } else if (iterable instanceof Object[]) {
+            values.addAll(Arrays.asList((Object[]) iterable));
+        } else if (iterable instanceof Iterable) {
+            for (Object value : (Iterable<?>) iterable) {
+                values.add(value);
             }
-            sb.append('\'');
-            sb.append(key);
-            sb.append('\'');
+        } else {
+            throw new UnsupportedOperationException("unsupoort" + iterable);
         }
-        return sb.toString();
+        return values;
     }
 
-    public String safe(String value) {
-        if (StringUtility.isNullOrEmpty(value)) {
-            value = SYMBOL.EMPTY;
-        } else {
-            // mysql 转义字符
-            value = value.replace(SYMBOL.SINGLE_QUOTES, "\\'");
-            value = value.replace(SYMBOL.PERCENT, "\\%").replace(SYMBOL.UNDERLINE, "\\_");
+    /**
+     * 值个数补齐后的参数个数
+     * <p>
+     * 完整的列表按上限计，剩余部分补齐到2的幂(不超过上限)
+     *
+     * @param size 值个数
+     * @return
+     */
+    public static int parameterCount(int size) {
+        int max = maxInSize;
+        int rest = size % max;
+        if (rest == 0) {
+            return size;
+        }
+        int bucket = Integer.highestOneBit(rest);
+        if (bucket < rest) {
+            bucket <<= 1;
         }
-        return value;
+        return size - rest + Math.min(bucket, max);
+    }
+
+    /**
+     * 按补齐后的个数生成参数 值类型与字段类型不一致时按字段类型转换
+     *
+     * @param field
+     * @param values
+     * @return
+     */
+    public static List<Parameter> parameters(Field field, List<Object> values) {
+        if (values.isEmpty()) {
+            throw new IllegalArgumentException(field.getName() + " in values is empty");
+        }
+        int parameterCount = parameterCount(values.size());
+        List<Parameter> parameters = new ArrayList<Parameter>(parameterCount);
+        for (Object value : values) {
+            parameters.add(new Parameter(field, convert(field, value)));
+        }
+        Parameter last = parameters.get(parameters.size() - 1);
+        while (parameters.size() < parameterCount) {
+            parameters.add(last);
+        }
+        return parameters;
+    }
+
+    private static Object convert(Field field, Object value) {
+        if (value == null || field.getType() == null || field.getType().isInstance(value)) {
+            return value;
+        }
+        return field.convert(value.toString());
+    }
+
+    /**
+     * 生成占位符条件 超过上限时拆分为多个列表
+     *
+     * @param column         含别名前缀的列名
+     * @param operator       IN或NOT_IN
+     * @param parameterCount 补齐后的参数个数
+     * @return
+     */
+    public static String condition(String column, ComparisonOperator operator, int parameterCount) {
+        int max = maxInSize;
+        StringBuilder condition = new StringBuilder();
+        boolean split = parameterCount > max;
+        if (split) {
+            condition.append(SYMBOL.LEFT_PARENTHESIS);
+        }
+        for (int start = 0; start < parameterCount; start += max) {
+            if (start > 0) {
+                condition.append(ComparisonOperator.NOT_IN.equals(operator) ? " AND " : " OR ");
+            }
+            condition.append(column);
+            condition.append(SYMBOL.BLANK);
+            condition.append(operator.rendered());
+            condition.append(SYMBOL.LEFT_PARENTHESIS);
+            int end = Math.min(start + max, parameterCount);
+            for (int i = start; i < end; i++) {
+                if (i > start) {
+                    condition.append(SYMBOL.COMMA);
+                }
+                condition.append('?');
+            }
+            condition.append(SYMBOL.RIGHT_PARENTHESIS);
+        }
+        if (split) {
+            condition.append(SYMBOL.RIGHT_PARENTHESIS);
+        }
+        return condition.toString();
     }
 
     @Override
     public RelationOperationEntity operation(Criteria criteria) {
-        Object iterable = criteria.getCriteriaEntry().getValue();
-        String in;
-        if (iterable instanceof String) {
-            in = this.safe(iterable.toString());
-        } else if (iterable instanceof Object[]) {
-            in = this.join((Object[]) iterable);
-        } else if (iterable instanceof Iterable) {
-            in = this.join((Iterable) iterable);
-        } else {
-            throw new UnsupportedOperationException("unsupoort" + iterable);
+        Field field = EntityManager.get(criteria.getField().getAlias()).getField(criteria.getField().getName());
+        if (field == null) {
+            throw new IllegalArgumentException(criteria.getField().getAlias() + SYMBOL.DOT + criteria.getField().getName() + " not found");
         }
-        String column = EntityManager.get(criteria.getField().getAlias()).getColumnName(criteria.getField().getName());
-        String condition = (criteria.isAlias() ? criteria.getField().getAlias() + SYMBOL.DOT : "") + column + SYMBOL.BLANK + criteria.getCriteriaEntry().getKey().rendered() + "(" + in + ")";
-        return new RelationOperationEntity(condition, null);
+        List<Parameter> parameters = parameters(field, values(criteria.getCriteriaEntry().getValue()));
+        String column = (criteria.isAlias() ? criteria.getField().getAlias() + SYMBOL.DOT : "") + field.getColumnName();
+        String condition = condition(column, criteria.getCriteriaEntry().getKey(), parameters.size());
+        return new RelationOperationEntity(condition, parameters);
     }
 }
@@ -36,6 +36,6 @@ public class IsNullOperation implements RelationalOperation {
         EntityManager entityManager = EntityManager.get(criteriaField.getAlias());
         Field field = entityManager.getField(criteriaField.getName());
         String condition = (criteria.isAlias() ? criteria.getField().getAlias() + SYMBOL.DOT : SYMBOL.EMPTY) + field.getColumnName() + SYMBOL.BLANK + criteria.getCriteriaEntry().getKey().rendered();
-        return new RelationOperationEntity(condition, null);
+        return new RelationOperationEntity(condition, (Parameter) null);
     }
 }
@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.replica;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 读库路由 按主库数据源key注册一组从库
+ * <p>
+ * 选择方式为按权重随机取两个可用从库，取当前借出连接数/权重较小的一个；
+ * 连续失败达到阈值的从库摘除一段时间，冷却后重新参与选择，再次失败立即摘除；
+ * 开启读己之写窗口时，当前线程写入后窗口内的读仍走主库
+ *
+ * @author harry
+ */
+public class ReplicaRouter {
+    private static Logger logger = LoggerFactory.getLogger(ReplicaRouter.class);
+
+    private static final Map<String, ReplicaRouter> ROUTERS = new ConcurrentHashMap<String, ReplicaRouter>();
+
+    private final String primary;
+
+    private final Replica[] replicas;
+    /**
+     * 连续失败多少次摘除
+     */
+    private volatile int failureThreshold = 3;
+    /**
+     * 摘除时长
+     */
+    private volatile long ejectMillis = 30000;
+    /**
+     * 写入后多长时间内当前线程的读走主库 小于等于0不开启
+     */
+    private volatile long readYourWritesMillis = 0;
+
+    private final ThreadLocal<long[]> lastWrite = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[] {Long.MIN_VALUE};
+        }
+    };
+
+    public ReplicaRouter(String primary, List<Replica> replicas) {
+        if (replicas == null || replicas.isEmpty()) {
+            throw new IllegalArgumentException("replicas required");
+        }
+        this.primary = primary;
+        this.replicas = replicas.toArray(new Replica[replicas.size()]);
+    }
+
+    /**
+     * 注册主库数据源key对应的路由
+     *
+     * @param router
+     */
+    public static void register(ReplicaRouter router) {
+        ROUTERS.put(router.primary, router);
+    }
+
+    public static void unregister(String primary) {
+        ROUTERS.remove(primary);
+    }
+
+    /**
+     * @param primary 主库数据源key
+     * @return 未注册时返回null
+     */
+    public static ReplicaRouter get(String primary) {
+        if (ROUTERS.isEmpty()) {
+            return null;
+        }
+        return ROUTERS.get(primary);
+    }
+
+    public String getPrimary() {
+        return primary;
+    }
+
+    public List<Replica> getReplicas() {
+        List<Replica> replicas = new ArrayList<Replica>(this.replicas.length);
+        Collections.addAll(replicas, this.replicas);
+        return replicas;
+    }
+
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    public void setEjectMillis(long ejectMillis) {
+        this.ejectMillis = ejectMillis;
+    }
+
+    public void setReadYourWritesMillis(long readYourWritesMillis) {
+        this.readYourWritesMillis = readYourWritesMillis;
+    }
+
+    /**
+     * 当前线程执行了写操作
+     */
+    public void markWrite() {
+        if (this.readYourWritesMillis > 0) {
+            this.lastWrite.get()[0] = System.nanoTime();
+        }
+    }
+
+    /**
+     * 选择一个从库
+     *
+     * @return 处于读己之写窗口内或没有可用从库时返回null(走主库)
+     */
+    public Replica select() {
+        long now = System.nanoTime();
+        long window = this.readYourWritesMillis;
+        if (window > 0) {
+            long last = this.lastWrite.get()[0];
+            if (last != Long.MIN_VALUE && now - last < TimeUnit.MILLISECONDS.toNanos(window)) {
+                return null;
+            }
+        }
+        int totalWeight = 0;
+        for (Replica replica : this.replicas) {
+            if (replica.isAvailable(now)) {
+                totalWeight += replica.weight;
+            }
+        }
+        if (totalWeight == 0) {
+            return null;
+        }
+        Replica first = this.pick(now, totalWeight);
+        Replica second = this.pick(now, totalWeight);
+        if (first == null || second == null) {
+            return first != null ? first : second;
+        }
+        return first.load() <= second.load() ? first : second;
+    }
+
+    private Replica pick(long now, int totalWeight) {
+        int random = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Replica replica : this.replicas) {
+            if (!replica.isAvailable(now)) {
+                continue;
+            }
+            random -= replica.weight;
+            if (random < 0) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    public static class Replica {
+        private final String dataSourceKey;
+        private final int weight;
+        /**
+         * 当前借出的连接数
+         */
+        private final AtomicInteger inflight = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile long ejectedUntil;
+        private volatile boolean ejected;
+
+        public Replica(String dataSourceKey, int weight) {
+            if (weight <= 0) {
+                throw new IllegalArgumentException("weight must be positive");
+            }
+            this.dataSourceKey = dataSourceKey;
+            this.weight = weight;
+        }
+
+        public String getDataSourceKey() {
+            return dataSourceKey;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public int getInflight() {
+            return inflight.get();
+        }
+
+        public boolean isEjected() {
+            return ejected && ejectedUntil - System.nanoTime() > 0;
+        }
+
+        boolean isAvailable(long now) {
+            return !this.ejected || this.ejectedUntil - now <= 0;
+        }
+
+        double load() {
+            return (double) this.inflight.get() / this.weight;
+        }
+
+        public void acquire() {
+            this.inflight.incrementAndGet();
+        }
+
+        public void release() {
+            this.inflight.decrementAndGet();
+        }
+
+        /**
+         * 语句在从库上执行成功 清零连续失败次数
+         */
+        public void markSuccess() {
+            if (this.failures.get() != 0) {
+                this.failures.set(0);
+            }
+            this.ejected = false;
+        }
+
+        void markFailure(int threshold, long ejectMillis) {
+            if (this.failures.incrementAndGet() >= threshold) {
+                this.ejectedUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ejectMillis);
+                if (!this.ejected) {
+                    logger.warn("replica {} ejected for {}ms", this.dataSourceKey, ejectMillis);
+                }
+                this.ejected = true;
+            }
+        }
+    }
+
+    /**
+     * 从库获取连接或执行失败
+     *
+     * @param replica
+     */
+    public void markFailure(Replica replica) {
+        replica.markFailure(this.failureThreshold, this.ejectMillis);
+    }
+}
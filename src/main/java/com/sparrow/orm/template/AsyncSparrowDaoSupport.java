@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.template;
+
+import com.sparrow.enums.STATUS_RECORD;
+import com.sparrow.orm.query.AGGREGATE;
+import com.sparrow.orm.query.SearchCriteria;
+import com.sparrow.orm.query.UpdateCriteria;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * SparrowDaoSupport 的异步版本 调用在JDBC执行器上运行
+ * <p/>
+ * 仅用于非事务调用，当前线程处于事务中时抛出IllegalStateException
+ *
+ * @author harry
+ */
+public interface AsyncSparrowDaoSupport<T, I> {
+    CompletableFuture<Long> insert(T model);
+
+    CompletableFuture<Integer> update(T model);
+
+    CompletableFuture<Integer> update(UpdateCriteria criteria);
+
+    CompletableFuture<Integer> delete(I id);
+
+    CompletableFuture<Integer> delete(SearchCriteria criteria);
+
+    CompletableFuture<Integer> batchDelete(String ids);
+
+    CompletableFuture<Integer> changeStatus(String ids, STATUS_RECORD status);
+
+    CompletableFuture<Integer> batchInsert(Collection<T> models);
+
+    CompletableFuture<Integer> batchUpdate(Collection<T> models);
+
+    CompletableFuture<T> getEntity(I id);
+
+    CompletableFuture<T> getEntity(Object key, String uniqueKey);
+
+    CompletableFuture<T> getEntity(SearchCriteria criteria);
+
+    CompletableFuture<List<T>> getList(SearchCriteria criteria);
+
+    CompletableFuture<KeysetPage<T>> getPage(SearchCriteria criteria, String continuationToken, int pageSize);
+
+    /**
+     * consumer在执行器线程上回调
+     */
+    CompletableFuture<Void> forEach(SearchCriteria criteria, Consumer<T> consumer);
+
+    <P, Q> CompletableFuture<Map<P, Q>> getMap(SearchCriteria criteria);
+
+    <Z> CompletableFuture<Set<Z>> firstList(SearchCriteria criteria);
+
+    CompletableFuture<Long> getCount(SearchCriteria criteria);
+
+    CompletableFuture<Long> getCount(Object key, String uniqueKey);
+
+    <X> CompletableFuture<X> getFieldValue(SearchCriteria criteria);
+
+    <X> CompletableFuture<X> getFieldValue(String fieldName, Object key, String uniqueKey);
+
+    <P> CompletableFuture<P> scalar(SearchCriteria criteria);
+
+    <X> CompletableFuture<X> getAggregate(AGGREGATE aggregate, SearchCriteria criteria);
+}
@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.template;
+
+/**
+ * 多行insert的冲突处理方式
+ *
+ * @author harry
+ */
+public enum BULK_INSERT_MODE {
+    /**
+     * 唯一键冲突时报错
+     */
+    INSERT,
+    /**
+     * insert ignore 跳过冲突行
+     */
+    INSERT_IGNORE,
+    /**
+     * insert ... on duplicate key update 冲突时以新值更新非主键列
+     */
+    UPSERT
+}
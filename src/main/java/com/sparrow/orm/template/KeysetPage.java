@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.template;
+
+import java.util.List;
+
+/**
+ * keyset分页的一页结果
+ *
+ * @author harry
+ */
+public class KeysetPage<T> {
+    private final List<T> list;
+    /**
+     * 取下一页的标记 没有下一页时为null
+     */
+    private final String continuationToken;
+
+    public KeysetPage(List<T> list, String continuationToken) {
+        this.list = list;
+        this.continuationToken = continuationToken;
+    }
+
+    public List<T> getList() {
+        return list;
+    }
+
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+
+    public boolean hasMore() {
+        return continuationToken != null;
+    }
+}
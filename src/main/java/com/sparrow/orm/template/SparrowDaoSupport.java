@@ -22,9 +22,12 @@ import com.sparrow.orm.query.SearchCriteria;
 import com.sparrow.orm.query.UpdateCriteria;
 import com.sparrow.support.db.DaoSupport;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * @author harry sparrow 跨jdbc 和elastic search接口
@@ -48,6 +51,23 @@ public interface SparrowDaoSupport<T, I> extends DaoSupport<T, I> {
 
     List<T> getList(SearchCriteria criteria);
 
+    /**
+     * 以只向前游标逐行读取并回调 结果集不在内存中累积
+     *
+     * @param criteria
+     * @param consumer
+     */
+    void forEach(SearchCriteria criteria, Consumer<T> consumer);
+
+    /**
+     * 以只向前游标逐行惰性映射 读取完毕或调用close时释放连接
+     * <p/>
+     * 未读取完的流必须关闭(try-with-resources)
+     *
+     * @param criteria
+     */
+    Stream<T> stream(SearchCriteria criteria);
+
     <P> P scalar(SearchCriteria criteria);
 
     /**
@@ -67,4 +87,45 @@ public interface SparrowDaoSupport<T, I> extends DaoSupport<T, I> {
     int update(UpdateCriteria criteria);
 
     <X> X getAggregate(AGGREGATE aggregate, SearchCriteria searchCriteria);
+
+    /**
+     * 批量插入 同一SQL共用一个PreparedStatement(addBatch)
+     * <p/>
+     * 自增主键回写到实体
+     *
+     * @param models
+     * @return 影响行数
+     */
+    int batchInsert(Collection<T> models);
+
+    /**
+     * 多行insert批量导入 按分表分组，按包大小拆分为多条 insert ... values (...),(...)
+     * <p/>
+     * 仅INSERT模式回写自增主键
+     *
+     * @param models
+     * @param mode   唯一键冲突时的处理方式
+     * @return 影响行数(upsert更新的行mysql计为2)
+     */
+    int bulkInsert(Collection<T> models, BULK_INSERT_MODE mode);
+
+    /**
+     * 批量更新 同一SQL共用一个PreparedStatement(addBatch)
+     *
+     * @param models
+     * @return 影响行数
+     */
+    int batchUpdate(Collection<T> models);
+
+    /**
+     * keyset分页 按上一页最后一行的排序值定位，不使用offset
+     * <p/>
+     * criteria中的分页被忽略
+     *
+     * @param criteria          条件及排序
+     * @param continuationToken 上一页返回的标记 第一页为null
+     * @param pageSize          每页条数
+     * @return
+     */
+    KeysetPage<T> getPage(SearchCriteria criteria, String continuationToken, int pageSize);
 }
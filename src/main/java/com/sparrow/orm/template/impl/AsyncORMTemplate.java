@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.template.impl;
+
+import com.sparrow.enums.STATUS_RECORD;
+import com.sparrow.orm.JDBCExecutor;
+import com.sparrow.orm.JDBCTemplate;
+import com.sparrow.orm.query.AGGREGATE;
+import com.sparrow.orm.query.SearchCriteria;
+import com.sparrow.orm.query.UpdateCriteria;
+import com.sparrow.orm.template.AsyncSparrowDaoSupport;
+import com.sparrow.orm.template.KeysetPage;
+import com.sparrow.orm.template.SparrowDaoSupport;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 异步DAO 在JDBCExecutor上调用同步实现
+ * <p>
+ * 非事务调用的连接在工作线程上获取并在调用结束时释放，不跨线程共享；
+ * 调用方线程的数据源后缀(显式指定或由分库策略从HttpContext取得)传递给工作线程
+ *
+ * @author harry
+ */
+public class AsyncORMTemplate<T, I> implements AsyncSparrowDaoSupport<T, I> {
+    private final SparrowDaoSupport<T, I> delegate;
+
+    private final JDBCTemplate jdbcTemplate;
+
+    private final JDBCExecutor executor;
+
+    public AsyncORMTemplate(DBORMTemplate<T, I> template) {
+        this(template, template.jdbcSupport, JDBCExecutor.getDefault());
+    }
+
+    /**
+     * @param delegate     同步实现
+     * @param jdbcTemplate delegate使用的数据源 用于事务检查及后缀传递 非关系库时为null
+     * @param executor
+     */
+    public AsyncORMTemplate(SparrowDaoSupport<T, I> delegate, JDBCTemplate jdbcTemplate, JDBCExecutor executor) {
+        this.delegate = delegate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.executor = executor;
+    }
+
+    public JDBCExecutor getExecutor() {
+        return executor;
+    }
+
+    private <R> CompletableFuture<R> submit(final Supplier<R> call) {
+        final String suffix;
+        if (this.jdbcTemplate != null) {
+            if (this.jdbcTemplate.isInTransaction()) {
+                throw new IllegalStateException("async dao call inside a transaction");
+            }
+            suffix = this.jdbcTemplate.resolveDataSourceSuffix();
+        } else {
+            suffix = null;
+        }
+        final CompletableFuture<R> future = new CompletableFuture<R>();
+        try {
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    String previous = JDBCTemplate.bindDataSourceSuffix(suffix);
+                    try {
+                        future.complete(call.get());
+                    } catch (Throwable e) {
+                        executor.markFailed();
+                        future.completeExceptionally(e);
+                    } finally {
+                        JDBCTemplate.bindDataSourceSuffix(previous);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Long> insert(T model) {
+        return this.submit(() -> this.delegate.insert(model));
+    }
+
+    @Override
+    public CompletableFuture<Integer> update(T model) {
+        return this.submit(() -> this.delegate.update(model));
+    }
+
+    @Override
+    public CompletableFuture<Integer> update(UpdateCriteria criteria) {
+        return this.submit(() -> this.delegate.update(criteria));
+    }
+
+    @Override
+    public CompletableFuture<Integer> delete(I id) {
+        return this.submit(() -> this.delegate.delete(id));
+    }
+
+    @Override
+    public CompletableFuture<Integer> delete(SearchCriteria criteria) {
+        return this.submit(() -> this.delegate.delete(criteria));
+    }
+
+    @Override
+    public CompletableFuture<Integer> batchDelete(String ids) {
+        return this.submit(() -> this.delegate.batchDelete(ids));
+    }
+
+    @Override
+    public CompletableFuture<Integer> changeStatus(String ids, STATUS_RECORD status) {
+        return this.submit(() -> this.delegate.changeStatus(ids, status));
+    }
+
+    @Override
+    public CompletableFuture<Integer> batchInsert(Collection<T> models) {
+        return this.submit(() -> this.delegate.batchInsert(models));
+    }
+
+    @Override
+    public CompletableFuture<Integer> batchUpdate(Collection<T> models) {
+        return this.submit(() -> this.delegate.batchUpdate(models));
+    }
+
+    @Override
+    public CompletableFuture<T> getEntity(I id) {
+        return this.submit(() -> this.delegate.getEntity(id));
+    }
+
+    @Override
+    public CompletableFuture<T> getEntity(Object key, String uniqueKey) {
+        return this.submit(() -> this.delegate.getEntity(key, uniqueKey));
+    }
+
+    @Override
+    public CompletableFuture<T> getEntity(SearchCriteria criteria) {
+        return this.submit(() -> this.delegate.getEntity(criteria));
+    }
+
+    @Override
+    public CompletableFuture<List<T>> getList(SearchCriteria criteria) {
+        return this.submit(() -> this.delegate.getList(criteria));
+    }
+
+    @Override
+    public CompletableFuture<KeysetPage<T>> getPage(SearchCriteria criteria, String continuationToken, int pageSize) {
+        return this.submit(() -> this.delegate.getPage(criteria, continuationToken, pageSize));
+    }
+
+    @Override
+    public CompletableFuture<Void> forEach(SearchCriteria criteria, Consumer<T> consumer) {
+        return this.submit(() -> {
+            this.delegate.forEach(criteria, consumer);
+            return null;
+        });
+    }
+
+    @Override
+    public <P, Q> CompletableFuture<Map<P, Q>> getMap(SearchCriteria criteria) {
+        return this.submit(() -> this.delegate.<P, Q>getMap(criteria));
+    }
+
+    @Override
+    public <Z> CompletableFuture<Set<Z>> firstList(SearchCriteria criteria) {
+        return this.submit(() -> this.delegate.<Z>firstList(criteria));
+    }
+
+    @Override
+    public CompletableFuture<Long> getCount(SearchCriteria criteria) {
+        return this.submit(() -> this.delegate.getCount(criteria));
+    }
+
+    @Override
+    public CompletableFuture<Long> getCount(Object key, String uniqueKey) {
+        return this.submit(() -> this.delegate.getCount(key, uniqueKey));
+    }
+
+    @Override
+    public <X> CompletableFuture<X> getFieldValue(SearchCriteria criteria) {
+        return this.submit(() -> this.delegate.<X>getFieldValue(criteria));
+    }
+
+    @Override
+    public <X> CompletableFuture<X> getFieldValue(String fieldName, Object key, String uniqueKey) {
+        return this.submit(() -> this.delegate.<X>getFieldValue(fieldName, key, uniqueKey));
+    }
+
+    @Override
+    public <P> CompletableFuture<P> scalar(SearchCriteria criteria) {
+        return this.submit(() -> this.delegate.<P>scalar(criteria));
+    }
+
+    @Override
+    public <X> CompletableFuture<X> getAggregate(AGGREGATE aggregate, SearchCriteria criteria) {
+        return this.submit(() -> this.delegate.<X>getAggregate(aggregate, criteria));
+    }
+}
@@ -18,33 +18,64 @@
 package com.sparrow.orm.template.impl;
 
 import com.sparrow.constant.CONFIG_KEY_DB;
+import com.sparrow.cg.MethodAccessor;
 import com.sparrow.constant.magic.DIGIT;
+import com.sparrow.constant.magic.SYMBOL;
 import com.sparrow.core.Pair;
 import com.sparrow.enums.DATABASE_SPLIT_STRATEGY;
+import com.sparrow.enums.DIALECT;
 import com.sparrow.enums.STATUS_RECORD;
+import com.sparrow.orm.Dialect;
+import com.sparrow.orm.DirtyTracker;
+import com.sparrow.orm.EntityManager;
 import com.sparrow.orm.Field;
 import com.sparrow.orm.JDBCParameter;
 import com.sparrow.orm.JDBCTemplate;
 import com.sparrow.orm.Parameter;
 import com.sparrow.orm.PrepareORM;
+import com.sparrow.orm.ResultSetMapper;
+import com.sparrow.orm.cache.EntityCache;
 import com.sparrow.orm.query.AGGREGATE;
+import com.sparrow.orm.query.HintedSearchCriteria;
+import com.sparrow.orm.query.OrderCriteria;
 import com.sparrow.orm.query.SearchCriteria;
 import com.sparrow.orm.query.UpdateCriteria;
+import com.sparrow.orm.query.impl.SimpleCriteriaField;
 import com.sparrow.orm.query.sql.CriteriaProcessor;
+import com.sparrow.orm.query.sql.KeysetToken;
 import com.sparrow.orm.query.sql.OperationEntity;
 import com.sparrow.orm.query.sql.impl.criteria.processor.SqlCriteriaProcessorImpl;
+import com.sparrow.orm.query.sql.impl.operation.InOperation;
+import com.sparrow.orm.template.BULK_INSERT_MODE;
+import com.sparrow.orm.template.KeysetPage;
 import com.sparrow.orm.template.SparrowDaoSupport;
-import com.sparrow.support.db.JDBCSupport;
 import com.sparrow.utility.StringUtility;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.persistence.Column;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,6 +84,10 @@ import org.slf4j.LoggerFactory;
  */
 public class DBORMTemplate<T, I> implements SparrowDaoSupport<T, I> {
     private static Logger logger = LoggerFactory.getLogger(PrepareORM.class);
+    /**
+     * 实体类 -> PrepareORM
+     */
+    private static final ConcurrentMap<List<Class<?>>, PrepareORM<?>> PREPARE_ORMS = new ConcurrentHashMap<List<Class<?>>, PrepareORM<?>>();
 
     protected CriteriaProcessor criteriaProcessor = new SqlCriteriaProcessorImpl();
     /**
@@ -64,18 +99,205 @@ public class DBORMTemplate<T, I> implements SparrowDaoSupport<T, I> {
     /**
      * 数据库辅助对象
      */
-    protected final JDBCSupport jdbcSupport;
+    protected final JDBCTemplate jdbcSupport;
 
     private PrepareORM<T> prepareORM;
+    /**
+     * 非mysql方言游标读取的默认拉取行数
+     */
+    private static final int DEFAULT_FETCH_SIZE = 1000;
+    /**
+     * 游标读取(forEach,stream)每次从服务端拉取的行数
+     * mysql默认Integer.MIN_VALUE逐行流式读取(仅Connector/J支持)，其他方言默认DEFAULT_FETCH_SIZE
+     */
+    private int fetchSize;
+    /**
+     * 批量插入更新时每次executeBatch提交的条数
+     */
+    private int batchSize = 500;
+    /**
+     * 多行insert单条语句的估算字节上限 应小于服务端max_allowed_packet
+     */
+    private int maxPacketBytes = 4 * 1024 * 1024 - 64 * 1024;
+    /**
+     * 多行insert单条语句的最大行数
+     */
+    private int bulkInsertRows = 1000;
+    /**
+     * 单条预编译语句占位符上限
+     */
+    private static final int MAX_PREPARED_PARAMETERS = 65535;
+    /**
+     * 按主键及唯一键的实体缓存 为null时不启用
+     */
+    private volatile EntityCache<T> entityCache;
+    /**
+     * 唯一键 -> 按唯一键查询实体的SQL
+     */
+    private final ConcurrentMap<String, String> uniqueSelects = new ConcurrentHashMap<String, String>();
+    /**
+     * 并行水合(HintedSearchCriteria)使用的线程池
+     */
+    private ForkJoinPool hydrationPool = ForkJoinPool.commonPool();
+    /**
+     * 本DAO加载实体的快照 默认关闭
+     */
+    private final DirtyTracker<T> dirtyTracker;
 
     public DBORMTemplate(Class clazz) {
         this.modelClazz = clazz;
         if (this.modelClazz != null) {
             this.modelName = StringUtility.getEntityNameByClass(this.modelClazz);
         }
-        this.prepareORM = new PrepareORM<T>(this.modelClazz, this.criteriaProcessor);
+        this.prepareORM = prepareORM(this.modelClazz, this.criteriaProcessor);
+        this.dirtyTracker = new DirtyTracker<T>(this.prepareORM.getMethodAccessor(), this.prepareORM.getEntityManager());
         DATABASE_SPLIT_STRATEGY databaseSplitKey = this.prepareORM.getEntityManager().getDatabaseSplitStrategy();
         this.jdbcSupport = JDBCTemplate.getInstance(this.prepareORM.getEntityManager().getSchema(), databaseSplitKey);
+        Dialect dialect = Dialect.getInstance(this.prepareORM.getEntityManager().getSchema());
+        this.fetchSize = dialect != null && dialect.getDialect() == DIALECT.MYSQL ? Integer.MIN_VALUE : DEFAULT_FETCH_SIZE;
+    }
+
+    /**
+     * 实体及条件处理器类型相同的DAO共用PrepareORM(实体元数据、映射器及语句缓存)
+     * <p>
+     * PrepareORM不保存DAO级别的设置，脏字段跟踪等状态由各DAO持有
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> PrepareORM<T> prepareORM(Class<?> clazz, CriteriaProcessor criteriaProcessor) {
+        if (clazz == null) {
+            return new PrepareORM<T>(null, criteriaProcessor);
+        }
+        List<Class<?>> key = Arrays.<Class<?>>asList(clazz, criteriaProcessor.getClass());
+        PrepareORM<?> prepareORM = PREPARE_ORMS.get(key);
+        if (prepareORM == null) {
+            prepareORM = new PrepareORM<T>(clazz, criteriaProcessor);
+            PrepareORM<?> exist = PREPARE_ORMS.putIfAbsent(key, prepareORM);
+            if (exist != null) {
+                prepareORM = exist;
+            }
+        }
+        return (PrepareORM<T>) prepareORM;
+    }
+
+    /**
+     * 启动时预先解析实体元数据并创建JDBCTemplate，首个请求不再承担构造开销
+     *
+     * @param entityClasses
+     */
+    public static void warmUp(Collection<Class<?>> entityClasses) {
+        for (Class<?> clazz : entityClasses) {
+            warmUp(clazz);
+        }
+    }
+
+    /**
+     * 预热单个实体 同时生成增删改语句
+     *
+     * @param entityClass
+     */
+    public static void warmUp(Class<?> entityClass) {
+        PrepareORM<?> prepareORM = prepareORM(entityClass, new SqlCriteriaProcessorImpl());
+        EntityManager entityManager = prepareORM.getEntityManager();
+        entityManager.getInsert();
+        entityManager.getUpdate();
+        entityManager.getDelete();
+        entityManager.getFields();
+        JDBCTemplate.getInstance(entityManager.getSchema(), entityManager.getDatabaseSplitStrategy());
+    }
+
+    PrepareORM<T> getPrepareORM() {
+        return prepareORM;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public ForkJoinPool getHydrationPool() {
+        return hydrationPool;
+    }
+
+    public void setHydrationPool(ForkJoinPool hydrationPool) {
+        this.hydrationPool = hydrationPool;
+    }
+
+    public int getMaxPacketBytes() {
+        return maxPacketBytes;
+    }
+
+    public void setMaxPacketBytes(int maxPacketBytes) {
+        this.maxPacketBytes = maxPacketBytes;
+    }
+
+    public int getBulkInsertRows() {
+        return bulkInsertRows;
+    }
+
+    public void setBulkInsertRows(int bulkInsertRows) {
+        this.bulkInsertRows = bulkInsertRows;
+    }
+
+    public EntityCache<T> getEntityCache() {
+        return entityCache;
+    }
+
+    /**
+     * 启用按主键及唯一键的实体缓存
+     * <p>
+     * 只有经过当前模板的写操作会使缓存失效，适用于读多写少且只通过本模板写入的表。
+     * 事务内的查询不使用缓存；事务中的写入在提交前即失效，期间其他线程可能缓存提交前的旧值，由过期时间兜底
+     *
+     * @param entityCache 为null时关闭缓存
+     */
+    public void setEntityCache(EntityCache<T> entityCache) {
+        this.entityCache = entityCache;
+    }
+
+    private Object primaryKey(Object id) {
+        return this.prepareORM.getEntityManager().getPrimary().convert(id.toString());
+    }
+
+    private void invalidate(Object id) {
+        EntityCache<T> entityCache = this.entityCache;
+        if (entityCache != null && id != null) {
+            entityCache.invalidate(this.primaryKey(id));
+        }
+    }
+
+    private void invalidate(List<Object> ids) {
+        EntityCache<T> entityCache = this.entityCache;
+        if (entityCache == null) {
+            return;
+        }
+        for (Object id : ids) {
+            entityCache.invalidate(this.primaryKey(id));
+        }
+    }
+
+    private void invalidateAll() {
+        EntityCache<T> entityCache = this.entityCache;
+        if (entityCache != null) {
+            entityCache.invalidateAll();
+        }
+    }
+
+    private void invalidateModel(T model) {
+        if (this.entityCache == null) {
+            return;
+        }
+        this.invalidate(this.prepareORM.getMethodAccessor().get(model, this.prepareORM.getEntityManager().getPrimary().getName()));
     }
 
     @Override
@@ -97,35 +319,289 @@ public class DBORMTemplate<T, I> implements SparrowDaoSupport<T, I> {
 
     @Override
     public int update(T model) {
-        return this.jdbcSupport.executeUpdate(this.prepareORM.update(model));
+        JDBCParameter jdbcParameter = this.prepareORM.update(model, this.dirtyTracker);
+        if (jdbcParameter == null) {
+            return 0;
+        }
+        try {
+            int count = this.jdbcSupport.executeUpdate(jdbcParameter);
+            this.refreshSnapshot(model);
+            return count;
+        } finally {
+            this.invalidateModel(model);
+        }
+    }
+
+    /**
+     * 更新成功后以当前值为新快照 事务内不刷新(可能回滚)
+     */
+    private void refreshSnapshot(T model) {
+        if (this.dirtyTracker.isEnabled() && !this.jdbcSupport.isInTransaction()) {
+            this.dirtyTracker.snapshot(model);
+        }
+    }
+
+    /**
+     * 启用脏字段跟踪 加载的实体update(T)时只写变化的列
+     *
+     * @param dirtyTracking
+     */
+    public void setDirtyTracking(boolean dirtyTracking) {
+        this.dirtyTracker.setEnabled(dirtyTracking);
+    }
+
+    @Override
+    public int batchInsert(Collection<T> models) {
+        if (models == null || models.isEmpty()) {
+            return 0;
+        }
+        Map<String, BatchGroup> groups = new LinkedHashMap<String, BatchGroup>();
+        for (T model : models) {
+            this.group(groups, model, this.prepareORM.insert(model));
+        }
+        String primaryName = this.prepareORM.getEntityManager().getPrimary().getName();
+        int count = 0;
+        for (BatchGroup group : groups.values()) {
+            long[] generatedKeys = null;
+            if (group.parameters.get(0).isAutoIncrement()) {
+                generatedKeys = new long[group.parameters.size()];
+            }
+            count += this.affectedRows(this.jdbcSupport.executeBatch(group.parameters, this.batchSize, generatedKeys));
+            if (generatedKeys == null) {
+                continue;
+            }
+            for (int i = 0; i < group.models.size(); i++) {
+                this.prepareORM.getMethodAccessor().set(group.models.get(i), primaryName, generatedKeys[i]);
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int bulkInsert(Collection<T> models, BULK_INSERT_MODE mode) {
+        if (models == null || models.isEmpty()) {
+            return 0;
+        }
+        Map<String, BatchGroup> groups = new LinkedHashMap<String, BatchGroup>();
+        for (T model : models) {
+            this.group(groups, model, this.prepareORM.insert(model));
+        }
+        int count = 0;
+        try {
+            for (BatchGroup group : groups.values()) {
+                int parametersPerRow = Math.max(1, group.parameters.get(0).getParameters().size());
+                int maxRows = Math.min(this.bulkInsertRows, MAX_PREPARED_PARAMETERS / parametersPerRow);
+                int from = 0;
+                long bytes = 0;
+                for (int i = 0; i < group.parameters.size(); i++) {
+                    int rowBytes = this.estimateBytes(group.parameters.get(i));
+                    if (i > from && (i - from >= maxRows || bytes + rowBytes > this.maxPacketBytes)) {
+                        count += this.bulkInsert(group, from, i, mode);
+                        from = i;
+                        bytes = 0;
+                    }
+                    bytes += rowBytes;
+                }
+                count += this.bulkInsert(group, from, group.parameters.size(), mode);
+            }
+        } finally {
+            if (mode == BULK_INSERT_MODE.UPSERT) {
+                for (T model : models) {
+                    this.invalidateModel(model);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 执行分组中[from,to)的行 仅INSERT模式下按行回写自增主键
+     * (ignore跳过的行及upsert更新的行不返回主键，无法与实体一一对应)
+     */
+    private int bulkInsert(BatchGroup group, int from, int to, BULK_INSERT_MODE mode) {
+        JDBCParameter insert = this.prepareORM.insert(group.parameters.subList(from, to), mode);
+        long[] generatedKeys = null;
+        if (insert.isAutoIncrement() && mode == BULK_INSERT_MODE.INSERT) {
+            generatedKeys = new long[to - from];
+        }
+        int count = this.jdbcSupport.executeInsert(insert, generatedKeys);
+        if (generatedKeys != null) {
+            String primaryName = this.prepareORM.getEntityManager().getPrimary().getName();
+            for (int i = 0; i < generatedKeys.length; i++) {
+                this.prepareORM.getMethodAccessor().set(group.models.get(from + i), primaryName, generatedKeys[i]);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 估算一行参数在语句中的字节数 字符按utf8最长3字节计
+     */
+    private int estimateBytes(JDBCParameter row) {
+        int bytes = 4;
+        for (Parameter parameter : row.getParameters()) {
+            Object value = parameter.getParameterValue();
+            if (value == null) {
+                bytes += 5;
+            } else if (value instanceof CharSequence) {
+                bytes += ((CharSequence) value).length() * 3 + 3;
+            } else if (value instanceof byte[]) {
+                bytes += ((byte[]) value).length * 2 + 3;
+            } else {
+                bytes += 24;
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public int batchUpdate(Collection<T> models) {
+        if (models == null || models.isEmpty()) {
+            return 0;
+        }
+        Map<String, BatchGroup> groups = new LinkedHashMap<String, BatchGroup>();
+        for (T model : models) {
+            JDBCParameter jdbcParameter = this.prepareORM.update(model, this.dirtyTracker);
+            if (jdbcParameter != null) {
+                this.group(groups, model, jdbcParameter);
+            }
+        }
+        int count = 0;
+        try {
+            for (BatchGroup group : groups.values()) {
+                count += this.affectedRows(this.jdbcSupport.executeBatch(group.parameters, this.batchSize, null));
+                for (T model : group.models) {
+                    this.refreshSnapshot(model);
+                }
+            }
+        } finally {
+            for (T model : models) {
+                this.invalidateModel(model);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 分表后SQL不同 按SQL分组，每组共用一个PreparedStatement
+     */
+    private void group(Map<String, BatchGroup> groups, T model, JDBCParameter jdbcParameter) {
+        BatchGroup group = groups.get(jdbcParameter.getCommand());
+        if (group == null) {
+            group = new BatchGroup();
+            groups.put(jdbcParameter.getCommand(), group);
+        }
+        group.models.add(model);
+        group.parameters.add(jdbcParameter);
+    }
+
+    private int affectedRows(int[] updateCounts) {
+        int count = 0;
+        for (int updateCount : updateCounts) {
+            if (updateCount > 0) {
+                count += updateCount;
+            } else if (updateCount == Statement.SUCCESS_NO_INFO) {
+                count++;
+            }
+        }
+        return count;
     }
 
     @Override
     public int update(UpdateCriteria criteria) {
-        return this.jdbcSupport.executeUpdate(this.prepareORM.update(criteria));
+        try {
+            return this.jdbcSupport.executeUpdate(this.prepareORM.update(criteria));
+        } finally {
+            this.invalidateAll();
+        }
     }
 
     @Override
     public int delete(I id) {
-        return this.jdbcSupport.executeUpdate(this.prepareORM.delete(id));
+        try {
+            return this.jdbcSupport.executeUpdate(this.prepareORM.delete(id));
+        } finally {
+            this.invalidate(id);
+        }
     }
 
     @Override
     public int delete(SearchCriteria criteria) {
-        return this.jdbcSupport.executeUpdate(this.prepareORM.delete(criteria));
+        try {
+            return this.jdbcSupport.executeUpdate(this.prepareORM.delete(criteria));
+        } finally {
+            this.invalidateAll();
+        }
     }
 
+    /**
+     * 超过IN列表上限时按上限拆分为多次执行
+     */
     @Override
     public int batchDelete(String ids) {
-        JDBCParameter parameter = this.prepareORM.batchDelete(ids);
-        return this.jdbcSupport.executeUpdate(parameter);
+        List<Object> idList = InOperation.values(ids);
+        int maxInSize = InOperation.getMaxInSize();
+        int count = 0;
+        try {
+            for (int start = 0; start < idList.size(); start += maxInSize) {
+                List<Object> chunk = idList.subList(start, Math.min(start + maxInSize, idList.size()));
+                count += this.jdbcSupport.executeUpdate(this.prepareORM.batchDelete(chunk));
+            }
+        } finally {
+            this.invalidate(idList);
+        }
+        return count;
     }
 
     private JDBCParameter getSelectSql(AGGREGATE aggregate, SearchCriteria searchCriteria) {
+        return this.getSelectSql(aggregate, searchCriteria, false);
+    }
+
+    /**
+     * @param aggregate
+     * @param searchCriteria
+     * @param single         只取第一行，未指定分页时追加limit 1
+     * @return
+     */
+    private JDBCParameter getSelectSql(AGGREGATE aggregate, SearchCriteria searchCriteria, boolean single) {
+        String limitClause = null;
+        if (!StringUtility.isNullOrEmpty(searchCriteria.getPageSize())
+            && searchCriteria.getPageSize() != DIGIT.ALL) {
+            limitClause = searchCriteria.getLimitClause();
+        } else if (single) {
+            limitClause = " limit 1";
+        }
+        return this.getSelectSql(aggregate, searchCriteria, searchCriteria.getTableSuffix(), limitClause);
+    }
+
+    /**
+     * @param aggregate
+     * @param searchCriteria
+     * @param tableSuffix    分表后缀 替代searchCriteria中的后缀
+     * @param limitClause    替代searchCriteria中的分页 为null时不分页
+     * @return
+     */
+    JDBCParameter getSelectSql(AGGREGATE aggregate, SearchCriteria searchCriteria, List<Object> tableSuffix, String limitClause) {
+        return this.getSelectSql(aggregate, searchCriteria, tableSuffix,
+            this.criteriaProcessor.order(searchCriteria.getOrderCriteriaList()), null, limitClause);
+    }
+
+    /**
+     * @param orderClause 排序子句
+     * @param seek        keyset分页条件 与where以and连接 可为null
+     */
+    private JDBCParameter getSelectSql(AGGREGATE aggregate, SearchCriteria searchCriteria, List<Object> tableSuffix,
+        String orderClause, OperationEntity seek, String limitClause) {
         StringBuilder selectSql = new StringBuilder();
         OperationEntity boolOperationEntity = this.criteriaProcessor.where(searchCriteria.getWhere());
         String whereClause = boolOperationEntity.getClause().toString();
-        String orderClause = this.criteriaProcessor.order(searchCriteria.getOrderCriteriaList());
+        List<Parameter> parameters = boolOperationEntity.getParameterList();
+        if (seek != null) {
+            whereClause = StringUtility.isNullOrEmpty(whereClause) ? seek.getClause().toString() :
+                whereClause + " and " + seek.getClause();
+            parameters = new ArrayList<Parameter>(parameters);
+            parameters.addAll(seek.getParameterList());
+        }
         selectSql.append("select ");
 
         if (aggregate == null) {
@@ -138,7 +614,7 @@ public class DBORMTemplate<T, I> implements SparrowDaoSupport<T, I> {
             String columns = this.criteriaProcessor.aggregate(aggregate, searchCriteria.getFields());
             selectSql.append(columns);
         }
-        selectSql.append(" from " + this.prepareORM.getTableName(searchCriteria.getTableSuffix())
+        selectSql.append(" from " + this.prepareORM.getTableName(tableSuffix)
             + " as " + StringUtility.getEntityNameByClass(this.modelClazz));
         if (!StringUtility.isNullOrEmpty(whereClause)) {
             selectSql.append(" where " + whereClause);
@@ -148,22 +624,30 @@ public class DBORMTemplate<T, I> implements SparrowDaoSupport<T, I> {
             selectSql.append(" order by " + orderClause);
         }
 
-        if (!StringUtility.isNullOrEmpty(searchCriteria.getPageSize())
-            && searchCriteria.getPageSize() != DIGIT.ALL) {
-            selectSql.append(searchCriteria.getLimitClause());
+        if (limitClause != null) {
+            selectSql.append(limitClause);
         }
-        logger.info(selectSql.toString());
-        return new JDBCParameter(selectSql.toString(), boolOperationEntity.getParameterList());
+        return new JDBCParameter(selectSql.toString(), parameters);
     }
 
     private ORMResult select(SearchCriteria searchCriteria) {
-        Long count = this.getCount(searchCriteria);
-        if (count == 0) {
+        return this.select(searchCriteria, false);
+    }
+
+    /**
+     * 不再预先count 记录数仅在调用ORMResult.getRecordCount时查询
+     *
+     * @param searchCriteria
+     * @param single         只取第一行
+     * @return
+     */
+    private ORMResult select(SearchCriteria searchCriteria, boolean single) {
+        JDBCParameter jdbcParameter = this.getSelectSql(null, searchCriteria, single);
+        ResultSet rs = this.jdbcSupport.executeQuery(jdbcParameter);
+        if (rs == null) {
             return null;
         }
-        JDBCParameter jdbcParameter = this.getSelectSql(null, searchCriteria);
-        ResultSet rs = this.jdbcSupport.executeQuery(jdbcParameter);
-        return new ORMResult(rs, count);
+        return new ORMResult(rs, searchCriteria);
     }
 
     @Override
@@ -173,14 +657,42 @@ public class DBORMTemplate<T, I> implements SparrowDaoSupport<T, I> {
 
     @Override
     public T getEntity(Object key, String uniqueKey) {
-        StringBuilder select = new StringBuilder("select ");
-        select.append(this.prepareORM.getEntityManager().getFields());
-        select.append(" from "
-            + this.prepareORM.getEntityManager().getTableName());
-        select.append(" " + this.modelName);
         Field uniqueField = this.prepareORM.getEntityManager().getUniqueField(uniqueKey);
-        select.append(" where " + uniqueField.getColumnName() + "=?");
-        JDBCParameter jdbcParameter = new JDBCParameter(select.toString(), Collections.singletonList(new Parameter(uniqueField, uniqueField.convert(key.toString()))));
+        Object value = uniqueField.convert(key.toString());
+        boolean primary = uniqueField.isPrimary();
+        EntityCache<T> entityCache = this.entityCache;
+        //事务内可能读到未提交的数据 不读写共享缓存
+        if (entityCache == null || this.jdbcSupport.isInTransaction()) {
+            return this.getEntity(uniqueKey, uniqueField, value);
+        }
+        T cached = primary ? entityCache.get(value) : entityCache.get(uniqueKey, value);
+        if (cached != null) {
+            T copy = this.prepareORM.copy(cached);
+            this.dirtyTracker.snapshot(copy);
+            return copy;
+        }
+        long version = entityCache.version();
+        T t = this.getEntity(uniqueKey, uniqueField, value);
+        if (t != null) {
+            if (primary) {
+                entityCache.put(value, this.prepareORM.copy(t), version);
+            } else {
+                entityCache.put(uniqueKey, value, this.prepareORM.copy(t), version);
+            }
+        }
+        return t;
+    }
+
+    private T getEntity(String uniqueKey, Field uniqueField, Object value) {
+        String select = this.uniqueSelects.get(uniqueKey);
+        if (select == null) {
+            select = "select " + this.prepareORM.getEntityManager().getFields()
+                + " from " + this.prepareORM.getEntityManager().getTableName()
+                + " " + this.modelName
+                + " where " + uniqueField.getColumnName() + "=?";
+            this.uniqueSelects.put(uniqueKey, select);
+        }
+        JDBCParameter jdbcParameter = new JDBCParameter(select, Collections.singletonList(new Parameter(uniqueField, value)));
         ResultSet rs = this.jdbcSupport.executeQuery(jdbcParameter);
 
         if (rs == null) {
@@ -190,6 +702,7 @@ public class DBORMTemplate<T, I> implements SparrowDaoSupport<T, I> {
         try {
             if (rs.next()) {
                 t = this.prepareORM.setEntity(rs, null);
+                this.dirtyTracker.snapshot(t);
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -202,7 +715,7 @@ public class DBORMTemplate<T, I> implements SparrowDaoSupport<T, I> {
     @Override
     @SuppressWarnings("unchecked")
     public T getEntity(SearchCriteria criteria) {
-        ORMResult ormResult = this.select(criteria);
+        ORMResult ormResult = this.select(criteria, true);
         if (ormResult == null) {
             return null;
         }
@@ -210,11 +723,7 @@ public class DBORMTemplate<T, I> implements SparrowDaoSupport<T, I> {
         T model = null;
         try {
             if (rs.next()) {
-                if (criteria != null && criteria.getRowMapper() != null) {
-                    model = (T) criteria.getRowMapper().mapRow(rs, rs.getRow());
-                } else {
-                    model = this.prepareORM.setEntity(rs, null);
-                }
+                model = this.mapRow(criteria, rs, this.getResultSetMapper(criteria, rs));
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -235,35 +744,249 @@ public class DBORMTemplate<T, I> implements SparrowDaoSupport<T, I> {
             list = new ArrayList<T>();
         }
 
-        ORMResult ormResult = this.select(criteria);
-        if (ormResult == null) {
-            return list;
+        this.fill(list, criteria, this.getSelectSql(null, criteria, false));
+        return list;
+    }
+
+    /**
+     * keyset分页 按排序列及主键定位，不使用offset，任意页的代价与第一页相同
+     * <p>
+     * 排序列需声明为非null(基本类型或@Column(nullable = false))且包含在查询字段中；
+     * 主键不在排序中时作为最后一个排序列(升序)以保证顺序唯一。续页标记取映射后实体的属性值
+     */
+    @Override
+    public KeysetPage<T> getPage(SearchCriteria criteria, String continuationToken, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("page size must be positive");
+        }
+        List<OrderCriteria> orderCriteriaList = criteria.getOrderCriteriaList();
+        Field primary = this.prepareORM.getEntityManager().getPrimary();
+        List<Field> keyFields = new ArrayList<Field>();
+        StringBuilder orderClause = new StringBuilder(this.criteriaProcessor.order(orderCriteriaList).trim());
+        Field tieBreaker = primary;
+        if (orderCriteriaList != null) {
+            for (OrderCriteria orderCriteria : orderCriteriaList) {
+                Field field = EntityManager.get(orderCriteria.getField().getAlias()).getField(orderCriteria.getField().getName());
+                keyFields.add(field);
+                if (field.getColumnName().equals(primary.getColumnName())) {
+                    tieBreaker = null;
+                }
+            }
         }
+        if (tieBreaker != null) {
+            keyFields.add(tieBreaker);
+            if (orderClause.length() > 0) {
+                orderClause.append(",");
+            }
+            orderClause.append(tieBreaker.getColumnName()).append(" ASC");
+        }
+        this.checkKeyFields(keyFields, criteria.getFields());
+        OperationEntity seek = null;
+        if (continuationToken != null) {
+            seek = this.criteriaProcessor.keyset(orderCriteriaList, tieBreaker, KeysetToken.decode(keyFields, continuationToken));
+        }
+        // 多取一行判断是否有下一页
+        JDBCParameter jdbcParameter = this.getSelectSql(null, criteria, criteria.getTableSuffix(), orderClause.toString(), seek, " limit " + (pageSize + 1));
+        List<T> list = new ArrayList<T>(pageSize);
+        List<Object> lastValues = null;
+        boolean hasMore = false;
+        ResultSet rs = this.jdbcSupport.executeQuery(jdbcParameter);
+        if (rs == null) {
+            return new KeysetPage<T>(list, null);
+        }
+        try {
+            ResultSetMapper<T> mapper = this.getResultSetMapper(criteria, rs);
+            while (rs.next()) {
+                if (list.size() == pageSize) {
+                    hasMore = true;
+                    break;
+                }
+                list.add(this.mapRow(criteria, rs, mapper));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            this.jdbcSupport.release(rs);
+        }
+        if (hasMore) {
+            MethodAccessor methodAccessor = this.prepareORM.getMethodAccessor();
+            T last = list.get(list.size() - 1);
+            lastValues = new ArrayList<Object>(keyFields.size());
+            for (Field keyField : keyFields) {
+                lastValues.add(methodAccessor.get(last, keyField.getName()));
+            }
+        }
+        return new KeysetPage<T>(list, hasMore ? KeysetToken.encode(keyFields, lastValues) : null);
+    }
 
-        ResultSet rs = ormResult.getResultSet();
+    /**
+     * 排序列为null时无法定位下一页，未查询的排序列无法取值，均在查询前拒绝
+     */
+    private void checkKeyFields(List<Field> keyFields, String fields) {
+        Set<String> selected = null;
+        if (!StringUtility.isNullOrEmpty(fields)) {
+            selected = new HashSet<String>();
+            for (String field : fields.split(SYMBOL.COMMA)) {
+                selected.add(new SimpleCriteriaField(field.trim()).getName());
+            }
+        }
+        for (Field keyField : keyFields) {
+            if (selected != null && !selected.contains(keyField.getName())) {
+                throw new IllegalArgumentException("keyset order field " + keyField.getName() + " must be selected");
+            }
+            if (!keyField.isPrimary() && this.isNullable(keyField)) {
+                throw new IllegalArgumentException("keyset order field " + keyField.getName()
+                    + " must be a primitive or declared @Column(nullable = false)");
+            }
+        }
+    }
+
+    private boolean isNullable(Field field) {
+        if (field.getType().isPrimitive()) {
+            return false;
+        }
+        String name = field.getName();
+        String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        Column column = null;
+        for (Class<?> clazz = this.modelClazz; clazz != null && column == null; clazz = clazz.getSuperclass()) {
+            for (java.lang.reflect.Method method : clazz.getDeclaredMethods()) {
+                if (method.getParameterTypes().length == 0
+                    && (method.getName().equals("get" + suffix) || method.getName().equals("is" + suffix))) {
+                    column = method.getAnnotation(Column.class);
+                    break;
+                }
+            }
+            if (column == null) {
+                try {
+                    column = clazz.getDeclaredField(name).getAnnotation(Column.class);
+                } catch (NoSuchFieldException ignore) {
+                }
+            }
+        }
+        return column == null || column.nullable();
+    }
+
+    /**
+     * 执行查询并将映射后的行追加到list
+     */
+    void fill(List<T> list, SearchCriteria criteria, JDBCParameter jdbcParameter) {
+        ResultSet rs = this.jdbcSupport.executeQuery(jdbcParameter);
+        if (rs == null) {
+            return;
+        }
+        this.fill(list, criteria, rs);
+    }
+
+    /**
+     * 将结果集映射后的行追加到list 读完后释放结果集
+     */
+    void fill(List<T> list, SearchCriteria criteria, ResultSet rs) {
         try {
+            ResultSetMapper<T> mapper = this.getResultSetMapper(criteria, rs);
+            if (mapper != null && criteria instanceof HintedSearchCriteria && ((HintedSearchCriteria) criteria).isParallelHydration()) {
+                this.hydrate(list, rs, mapper, ((HintedSearchCriteria) criteria).getHydrationChunkSize());
+                return;
+            }
             while (rs.next()) {
-                T m;
-                if (criteria != null && criteria.getRowMapper() != null) {
-                    m = (T) criteria.getRowMapper().mapRow(rs, rs.getRow());
-                } else {
-                    m = this.prepareORM.setEntity(rs, null);
+                list.add(this.mapRow(criteria, rs, mapper));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            this.jdbcSupport.release(rs);
+        }
+    }
+
+    /**
+     * 当前线程按块读取原始列值，水合任务提交到hydrationPool并按提交顺序合并结果；
+     * 未完成的块超过并行度的两倍时先合并最早的块，限制读取线程领先的内存
+     */
+    private void hydrate(List<T> list, ResultSet rs, final ResultSetMapper<T> mapper,
+        int chunkSize) throws SQLException {
+        if (chunkSize <= 0) {
+            chunkSize = 256;
+        }
+        ForkJoinPool pool = this.hydrationPool;
+        int maxInFlight = pool.getParallelism() * 2;
+        Deque<ForkJoinTask<List<T>>> inFlight = new ArrayDeque<ForkJoinTask<List<T>>>();
+        List<Object[]> chunk = new ArrayList<Object[]>(chunkSize);
+        boolean hasNext = rs.next();
+        while (hasNext) {
+            chunk.add(mapper.readRow(rs));
+            hasNext = rs.next();
+            if (chunk.size() < chunkSize && hasNext) {
+                continue;
+            }
+            final List<Object[]> rows = chunk;
+            inFlight.addLast(pool.submit(new Callable<List<T>>() {
+                @Override
+                public List<T> call() {
+                    List<T> models = new ArrayList<T>(rows.size());
+                    for (Object[] row : rows) {
+                        T model = mapper.hydrate(row);
+                        dirtyTracker.snapshot(model);
+                        models.add(model);
+                    }
+                    return models;
                 }
-                list.add(m);
+            }));
+            chunk = new ArrayList<Object[]>(chunkSize);
+            while (inFlight.size() > maxInFlight) {
+                list.addAll(inFlight.pollFirst().join());
+            }
+        }
+        while (!inFlight.isEmpty()) {
+            list.addAll(inFlight.pollFirst().join());
+        }
+    }
+
+    @Override
+    public void forEach(SearchCriteria criteria, Consumer<T> consumer) {
+        ResultSet rs = this.jdbcSupport.executeCursor(this.getSelectSql(null, criteria), this.fetchSize);
+        try {
+            ResultSetMapper<T> mapper = this.getResultSetMapper(criteria, rs);
+            while (rs.next()) {
+                consumer.accept(this.mapRow(criteria, rs, mapper));
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
         } finally {
-            this.jdbcSupport.release(ormResult.getResultSet());
+            this.jdbcSupport.release(rs);
         }
-        return list;
+    }
+
+    @Override
+    public Stream<T> stream(SearchCriteria criteria) {
+        ResultSet rs = this.jdbcSupport.executeCursor(this.getSelectSql(null, criteria), this.fetchSize);
+        CursorSpliterator spliterator = new CursorSpliterator(criteria, rs);
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+    }
+
+    /**
+     * 自定义RowMapper时返回null
+     */
+    private ResultSetMapper<T> getResultSetMapper(SearchCriteria criteria, ResultSet rs) throws SQLException {
+        if (criteria != null && criteria.getRowMapper() != null) {
+            return null;
+        }
+        return this.prepareORM.getResultSetMapper(rs);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T mapRow(SearchCriteria criteria, ResultSet rs, ResultSetMapper<T> mapper) throws SQLException {
+        if (mapper == null) {
+            return (T) criteria.getRowMapper().mapRow(rs, rs.getRow());
+        }
+        T model = mapper.map(rs);
+        this.dirtyTracker.snapshot(model);
+        return model;
     }
 
     @Override
     public <Z> Set<Z> firstList(SearchCriteria criteria) {
         Set<Z> list = new LinkedHashSet<Z>();
         ORMResult ormResult = this.select(criteria);
-        if (ormResult == null || ormResult.getResultSet() == null || ormResult.getRecordCount() == 0) {
+        if (ormResult == null || ormResult.getResultSet() == null) {
             return list;
         }
 
@@ -397,10 +1120,73 @@ public class DBORMTemplate<T, I> implements SparrowDaoSupport<T, I> {
         }
     }
 
+    /**
+     * 超过IN列表上限时按上限拆分为多次执行
+     */
     @Override
     public int changeStatus(String primaryKey, STATUS_RECORD status) {
-        JDBCParameter jdbcParameter = this.prepareORM.changeStatus(primaryKey, status);
-        return this.jdbcSupport.executeUpdate(jdbcParameter);
+        List<Object> primaryKeys = InOperation.values(primaryKey);
+        int maxInSize = InOperation.getMaxInSize();
+        int count = 0;
+        try {
+            for (int start = 0; start < primaryKeys.size(); start += maxInSize) {
+                List<Object> chunk = primaryKeys.subList(start, Math.min(start + maxInSize, primaryKeys.size()));
+                count += this.jdbcSupport.executeUpdate(this.prepareORM.changeStatus(chunk, status));
+            }
+        } finally {
+            this.invalidate(primaryKeys);
+        }
+        return count;
+    }
+
+    /**
+     * 只向前游标的惰性遍历 读取完毕、异常或流关闭时释放结果集
+     */
+    class CursorSpliterator extends Spliterators.AbstractSpliterator<T> {
+        private final SearchCriteria criteria;
+        private final ResultSet resultSet;
+        private ResultSetMapper<T> mapper;
+        private boolean closed;
+
+        CursorSpliterator(SearchCriteria criteria, ResultSet resultSet) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED);
+            this.criteria = criteria;
+            this.resultSet = resultSet;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (this.closed) {
+                return false;
+            }
+            try {
+                if (!this.resultSet.next()) {
+                    this.close();
+                    return false;
+                }
+                if (this.mapper == null) {
+                    this.mapper = getResultSetMapper(this.criteria, this.resultSet);
+                }
+                action.accept(mapRow(this.criteria, this.resultSet, this.mapper));
+                return true;
+            } catch (SQLException e) {
+                this.close();
+                throw new RuntimeException(e);
+            }
+        }
+
+        void close() {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            jdbcSupport.release(this.resultSet);
+        }
+    }
+
+    class BatchGroup {
+        final List<T> models = new ArrayList<T>();
+        final List<JDBCParameter> parameters = new ArrayList<JDBCParameter>();
     }
 
     class ORMResult {
@@ -412,6 +1198,11 @@ public class DBORMTemplate<T, I> implements SparrowDaoSupport<T, I> {
             this.recordCount = recordCount;
         }
 
+        public ORMResult(ResultSet resultSet, SearchCriteria searchCriteria) {
+            this.resultSet = resultSet;
+            this.searchCriteria = searchCriteria;
+        }
+
         public void setResultSet(ResultSet resultSet) {
             this.resultSet = resultSet;
         }
@@ -424,11 +1215,18 @@ public class DBORMTemplate<T, I> implements SparrowDaoSupport<T, I> {
             return resultSet;
         }
 
+        /**
+         * 首次调用时才执行count查询
+         */
         public Long getRecordCount() {
+            if (recordCount == null && searchCriteria != null) {
+                recordCount = getCount(searchCriteria);
+            }
             return recordCount;
         }
 
         ResultSet resultSet;
         Long recordCount;
+        SearchCriteria searchCriteria;
     }
 }
\ No newline at end of file
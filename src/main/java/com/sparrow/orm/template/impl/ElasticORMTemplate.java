@@ -0,0 +1,782 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.template.impl;
+
+import com.sparrow.cg.MethodAccessor;
+import com.sparrow.constant.CONFIG_KEY_DB;
+import com.sparrow.constant.CONSTANT;
+import com.sparrow.core.spi.ApplicationContext;
+import com.sparrow.enums.STATUS_RECORD;
+import com.sparrow.orm.EntityManager;
+import com.sparrow.orm.Field;
+import com.sparrow.orm.Parameter;
+import com.sparrow.orm.query.AGGREGATE;
+import com.sparrow.orm.query.SearchCriteria;
+import com.sparrow.orm.query.UpdateCriteria;
+import com.sparrow.orm.query.UpdateSetClausePair;
+import com.sparrow.orm.query.elasticsearch.ElasticBulk;
+import com.sparrow.orm.query.elasticsearch.ElasticClient;
+import com.sparrow.orm.query.elasticsearch.Json;
+import com.sparrow.orm.query.elasticsearch.SearchHits;
+import com.sparrow.orm.query.elasticsearch.impl.ElasticCriteriaProcessor;
+import com.sparrow.orm.query.sql.impl.operation.InOperation;
+import com.sparrow.orm.template.BULK_INSERT_MODE;
+import com.sparrow.orm.template.KeysetPage;
+import com.sparrow.orm.template.SparrowDaoSupport;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * elasticsearch 实现
+ * <p>
+ * 索引名为表名(含分表后缀)的小写，文档id为主键值，文档字段为列名；
+ * 分表实体写入时按实体的分表字段计算后缀(同PrepareORM)，无法确定后缀的查询及按id的操作作用于所有分表索引(通配)；
+ * 分页在from+size不超过max_result_window时直接取，超过或不分页时以search_after逐页遍历，
+ * 批量写入使用bulk接口
+ *
+ * @author harry
+ */
+public class ElasticORMTemplate<T, I> implements SparrowDaoSupport<T, I> {
+    private static Logger logger = LoggerFactory.getLogger(ElasticORMTemplate.class);
+
+    private static final String AGGREGATION = "value";
+
+    private final ElasticCriteriaProcessor criteriaProcessor = new ElasticCriteriaProcessor();
+
+    private final Class<?> modelClazz;
+
+    private final EntityManager entityManager;
+
+    private final MethodAccessor methodAccessor;
+    /**
+     * 表名含分表占位符
+     */
+    private final boolean split;
+
+    private ElasticClient client;
+    /**
+     * 与索引的index.max_result_window一致
+     */
+    private int maxResultWindow = 10000;
+    /**
+     * search_after每页条数
+     */
+    private int scrollSize = 1000;
+    /**
+     * 写入后是否立即refresh(写入后即可被搜索到，代价较高)
+     */
+    private boolean refresh = false;
+
+    public ElasticORMTemplate(Class<?> clazz) {
+        this.modelClazz = clazz;
+        this.entityManager = new EntityManager(clazz);
+        this.methodAccessor = ApplicationContext.getContainer().getProxyBean(clazz);
+        String insert = this.entityManager.getInsert();
+        this.split = this.entityManager.getTableName().contains(CONSTANT.TABLE_SUFFIX)
+            || (insert != null && insert.contains(CONSTANT.TABLE_SUFFIX));
+        this.client = ElasticClient.getInstance(this.entityManager.getSchema());
+    }
+
+    public ElasticClient getClient() {
+        return client;
+    }
+
+    public void setClient(ElasticClient client) {
+        this.client = client;
+    }
+
+    public int getMaxResultWindow() {
+        return maxResultWindow;
+    }
+
+    public void setMaxResultWindow(int maxResultWindow) {
+        this.maxResultWindow = maxResultWindow;
+    }
+
+    public int getScrollSize() {
+        return scrollSize;
+    }
+
+    public void setScrollSize(int scrollSize) {
+        this.scrollSize = scrollSize;
+    }
+
+    public boolean isRefresh() {
+        return refresh;
+    }
+
+    public void setRefresh(boolean refresh) {
+        this.refresh = refresh;
+    }
+
+    /**
+     * @param suffix 分表后缀 为null时分表实体返回所有分表的通配
+     * @return 索引名(不含/)
+     */
+    private String indexName(String suffix) {
+        String table = this.entityManager.getTableName();
+        if (suffix == null) {
+            suffix = this.split ? "*" : "";
+        }
+        table = table.contains(CONSTANT.TABLE_SUFFIX) ? table.replace(CONSTANT.TABLE_SUFFIX, suffix) : table + suffix;
+        return table.toLowerCase();
+    }
+
+    /**
+     * 按查询条件指定的分表后缀 未指定时分表实体作用于所有分表
+     */
+    private String index(List<Object> tableSuffix) {
+        String suffix = tableSuffix == null || tableSuffix.isEmpty() ? null : this.entityManager.getTableSuffix(tableSuffix);
+        return "/" + this.indexName(suffix);
+    }
+
+    /**
+     * 按实体的分表字段取索引名 同PrepareORM.insert
+     */
+    private String indexName(T model) {
+        if (!this.split) {
+            return this.indexName((String) null);
+        }
+        Map<Integer, Object> tableSuffix = new TreeMap<Integer, Object>();
+        List<Parameter> parameters = new ArrayList<Parameter>();
+        for (Field field : this.entityManager.getFieldMap().values()) {
+            this.entityManager.parseField(field, parameters, this.methodAccessor.get(model, field.getName()), tableSuffix, false);
+        }
+        if (tableSuffix.isEmpty()) {
+            throw new IllegalArgumentException("table suffix field required " + this.modelClazz.getSimpleName());
+        }
+        return this.indexName(this.entityManager.getTableSuffix(tableSuffix));
+    }
+
+    private Map<String, Object> idsQuery(Collection<?> ids) {
+        List<String> values = new ArrayList<String>(ids.size());
+        for (Object id : ids) {
+            values.add(id.toString());
+        }
+        return Collections.<String, Object>singletonMap("ids", Collections.singletonMap("values", values));
+    }
+
+    private SearchHits searchHits(String index, Map<String, Object> body, long offset, long limit) {
+        return new SearchHits(this.client, index, body, offset, limit, this.maxResultWindow, this.scrollSize);
+    }
+
+    private String refreshQuery(String separator) {
+        return this.refresh ? separator + "refresh=true" : "";
+    }
+
+    private static String encode(Object id) {
+        try {
+            return URLEncoder.encode(id.toString(), "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Object primaryValue(T model) {
+        return this.methodAccessor.get(model, this.entityManager.getPrimary().getName());
+    }
+
+    private Map<String, Object> document(T model, boolean includeNull) {
+        Map<String, Object> document = new LinkedHashMap<String, Object>();
+        for (Field field : this.entityManager.getFieldMap().values()) {
+            if (field == null || !field.isPersistence()) {
+                continue;
+            }
+            Object value = this.methodAccessor.get(model, field.getName());
+            if (value != null || includeNull) {
+                document.put(field.getColumnName(), value);
+            }
+        }
+        return document;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T entity(Map<String, Object> source) {
+        if (source == null) {
+            return null;
+        }
+        T model;
+        try {
+            model = (T) this.modelClazz.getConstructor().newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        for (Map.Entry<String, Object> entry : source.entrySet()) {
+            Field field = this.field(entry.getKey());
+            if (field == null || entry.getValue() == null) {
+                continue;
+            }
+            try {
+                this.methodAccessor.set(model, field.getName(), value(field, entry.getValue()));
+            } catch (Exception e) {
+                logger.error(this.modelClazz.getSimpleName() + "|" + field.getName(), e);
+            }
+        }
+        return model;
+    }
+
+    private Field field(String column) {
+        String property = this.entityManager.getAttribute(column);
+        return property == null ? null : this.entityManager.getField(property);
+    }
+
+    /**
+     * JSON值转换为属性类型
+     */
+    private static Object value(Field field, Object value) {
+        if (value == null || field == null) {
+            return value;
+        }
+        Class<?> type = field.getType();
+        if (value instanceof Number) {
+            Number number = (Number) value;
+            if (type == Long.class || type == long.class) {
+                return number.longValue();
+            }
+            if (type == Integer.class || type == int.class) {
+                return number.intValue();
+            }
+            if (type == Double.class || type == double.class) {
+                return number.doubleValue();
+            }
+            if (type == Float.class || type == float.class) {
+                return number.floatValue();
+            }
+            if (type == Short.class || type == short.class) {
+                return number.shortValue();
+            }
+            if (type == Byte.class || type == byte.class) {
+                return number.byteValue();
+            }
+            if (type == BigDecimal.class) {
+                return new BigDecimal(number.toString());
+            }
+            if (type == java.sql.Timestamp.class) {
+                return new java.sql.Timestamp(number.longValue());
+            }
+            if (type == java.sql.Date.class) {
+                return new java.sql.Date(number.longValue());
+            }
+            if (type == java.util.Date.class) {
+                return new java.util.Date(number.longValue());
+            }
+        }
+        if (type == String.class) {
+            return value.toString();
+        }
+        if (type.isInstance(value)) {
+            return value;
+        }
+        return field.convert(value.toString());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V path(Map<String, Object> json, String... keys) {
+        Object value = json;
+        for (String key : keys) {
+            if (!(value instanceof Map)) {
+                return null;
+            }
+            value = ((Map<String, Object>) value).get(key);
+        }
+        return (V) value;
+    }
+
+    private static void checkRowMapper(SearchCriteria criteria) {
+        if (criteria != null && criteria.getRowMapper() != null) {
+            throw new UnsupportedOperationException("row mapper requires a jdbc result set");
+        }
+    }
+
+    @Override
+    public Long insert(T model) {
+        Object id = this.primaryValue(model);
+        String index = "/" + this.indexName(model);
+        if (id == null) {
+            Map<String, Object> response = this.client.execute("POST", index + "/_doc" + this.refreshQuery("?"), this.document(model, false));
+            if (this.entityManager.getPrimary().getType() == String.class) {
+                this.methodAccessor.set(model, this.entityManager.getPrimary().getName(), path(response, "_id"));
+            }
+            return 0L;
+        }
+        this.client.execute("PUT", index + "/_doc/" + encode(id) + this.refreshQuery("?"), this.document(model, false));
+        return id instanceof Number ? ((Number) id).longValue() : 0L;
+    }
+
+    @Override
+    public int update(T model) {
+        Map<String, Object> body = new LinkedHashMap<String, Object>();
+        body.put("doc", this.document(model, true));
+        Map<String, Object> response = this.client.execute("POST", "/" + this.indexName(model) + "/_update/" + encode(this.primaryValue(model)) + this.refreshQuery("?"), body);
+        return response != null && "updated".equals(response.get("result")) ? 1 : 0;
+    }
+
+    @Override
+    public int update(UpdateCriteria criteria) {
+        StringBuilder source = new StringBuilder();
+        Map<String, Object> params = new LinkedHashMap<String, Object>();
+        for (UpdateSetClausePair pair : criteria.getSetClausePairList()) {
+            String column = this.criteriaProcessor.column(pair.getField());
+            String param = "p" + params.size();
+            params.put(param, pair.getValue());
+            source.append("ctx._source['").append(column).append("']")
+                .append(Boolean.TRUE.equals(pair.getAdd()) ? " += " : " = ")
+                .append("params.").append(param).append(';');
+        }
+        return this.updateByQuery(this.index(criteria.getTableSuffix()), this.criteriaProcessor.query(criteria.getWhere()), source.toString(), params);
+    }
+
+    private int updateByQuery(String index, Map<String, Object> query, String source, Map<String, Object> params) {
+        Map<String, Object> script = new LinkedHashMap<String, Object>();
+        script.put("source", source);
+        script.put("params", params);
+        Map<String, Object> body = new LinkedHashMap<String, Object>();
+        body.put("query", query);
+        body.put("script", script);
+        Map<String, Object> response = this.client.execute("POST", index + "/_update_by_query?conflicts=proceed" + this.refreshQuery("&"), body);
+        return number(response, "updated");
+    }
+
+    private int deleteByQuery(String index, Map<String, Object> query) {
+        Map<String, Object> body = new LinkedHashMap<String, Object>();
+        body.put("query", query);
+        Map<String, Object> response = this.client.execute("POST", index + "/_delete_by_query?conflicts=proceed" + this.refreshQuery("&"), body);
+        return number(response, "deleted");
+    }
+
+    /**
+     * 分表实体无法由id确定索引 在所有分表上按id删除
+     */
+    @Override
+    public int delete(I id) {
+        if (this.split) {
+            return this.deleteByQuery(this.index(null), this.idsQuery(Collections.singletonList(id)));
+        }
+        Map<String, Object> response = this.client.execute("DELETE", this.index(null) + "/_doc/" + encode(id) + this.refreshQuery("?"), null);
+        return response != null && "deleted".equals(response.get("result")) ? 1 : 0;
+    }
+
+    @Override
+    public int delete(SearchCriteria criteria) {
+        return this.deleteByQuery(this.index(criteria.getTableSuffix()), this.criteriaProcessor.query(criteria.getWhere()));
+    }
+
+    private static int number(Map<String, Object> response, String key) {
+        Number number = response == null ? null : (Number) response.get(key);
+        return number == null ? 0 : number.intValue();
+    }
+
+    @Override
+    public int batchDelete(String ids) {
+        List<Object> idList = InOperation.values(ids);
+        if (this.split) {
+            return idList.isEmpty() ? 0 : this.deleteByQuery(this.index(null), this.idsQuery(idList));
+        }
+        String index = this.indexName((String) null);
+        ElasticBulk bulk = new ElasticBulk();
+        for (Object id : idList) {
+            bulk.add("delete", index, id, null);
+        }
+        return this.bulk(bulk, null, false);
+    }
+
+    @Override
+    public int changeStatus(String ids, STATUS_RECORD status) {
+        List<Object> idList = InOperation.values(ids);
+        String column = this.entityManager.getStatus().getColumnName();
+        if (this.split) {
+            if (idList.isEmpty()) {
+                return 0;
+            }
+            return this.updateByQuery(this.index(null), this.idsQuery(idList), "ctx._source['" + column + "'] = params.p0;",
+                Collections.<String, Object>singletonMap("p0", status.name()));
+        }
+        Map<String, Object> doc = Collections.<String, Object>singletonMap("doc", Collections.singletonMap(column, status.name()));
+        String index = this.indexName((String) null);
+        ElasticBulk bulk = new ElasticBulk();
+        for (Object id : idList) {
+            bulk.add("update", index, id, doc);
+        }
+        return this.bulk(bulk, null, false);
+    }
+
+    @Override
+    public int batchInsert(Collection<T> models) {
+        if (models == null || models.isEmpty()) {
+            return 0;
+        }
+        List<T> list = new ArrayList<T>(models);
+        ElasticBulk bulk = new ElasticBulk();
+        for (T model : list) {
+            bulk.add("index", this.indexName(model), this.primaryValue(model), this.document(model, false));
+        }
+        return this.bulk(bulk, list, false);
+    }
+
+    /**
+     * INSERT及INSERT_IGNORE使用create(已存在返回409)，UPSERT使用index覆盖文档
+     */
+    @Override
+    public int bulkInsert(Collection<T> models, BULK_INSERT_MODE mode) {
+        if (models == null || models.isEmpty()) {
+            return 0;
+        }
+        String action = mode == BULK_INSERT_MODE.UPSERT ? "index" : "create";
+        List<T> list = new ArrayList<T>(models);
+        ElasticBulk bulk = new ElasticBulk();
+        for (T model : list) {
+            bulk.add(action, this.indexName(model), this.primaryValue(model), this.document(model, false));
+        }
+        return this.bulk(bulk, list, mode == BULK_INSERT_MODE.INSERT_IGNORE);
+    }
+
+    @Override
+    public int batchUpdate(Collection<T> models) {
+        if (models == null || models.isEmpty()) {
+            return 0;
+        }
+        ElasticBulk bulk = new ElasticBulk();
+        for (T model : models) {
+            bulk.add("update", this.indexName(model), this.primaryValue(model), Collections.singletonMap("doc", this.document(model, true)));
+        }
+        return this.bulk(bulk, null, false);
+    }
+
+    /**
+     * @param inserted       批量插入的实体 es生成的字符串主键回写
+     * @param ignoreConflict 文档已存在(409)不记为错误
+     * @return 成功条数
+     */
+    private int bulk(ElasticBulk bulk, List<T> inserted, boolean ignoreConflict) {
+        List<Map<String, Object>> items = bulk.execute(this.client, this.refreshQuery("?"));
+        boolean stringPrimary = this.entityManager.getPrimary().getType() == String.class;
+        int count = 0;
+        for (int i = 0; i < items.size(); i++) {
+            Map<String, Object> item = items.get(i);
+            if (ElasticBulk.succeeded(item)) {
+                count++;
+                if (inserted != null && stringPrimary && this.primaryValue(inserted.get(i)) == null) {
+                    this.methodAccessor.set(inserted.get(i), this.entityManager.getPrimary().getName(), item.get("_id"));
+                }
+            } else if (item.get("error") != null && !(ignoreConflict && ElasticBulk.conflict(item))) {
+                logger.error("elasticsearch bulk item error {}", Json.toJson(item.get("error")));
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public T getEntity(I id) {
+        return this.getEntity(id, CONFIG_KEY_DB.ORM_PRIMARY_KEY_UNIQUE);
+    }
+
+    @Override
+    public T getEntity(Object key, String uniqueKey) {
+        Field uniqueField = this.entityManager.getUniqueField(uniqueKey);
+        if (uniqueField.isPrimary() && this.split) {
+            Map<String, Object> body = new LinkedHashMap<String, Object>();
+            body.put("query", this.idsQuery(Collections.singletonList(key)));
+            Iterator<Map<String, Object>> hits = this.searchHits(this.index(null), body, 0, 1);
+            return hits.hasNext() ? this.entity(path(hits.next(), "_source")) : null;
+        }
+        if (uniqueField.isPrimary()) {
+            Map<String, Object> response = this.client.execute("GET", this.index(null) + "/_doc/" + encode(key), null);
+            if (response == null || !Boolean.TRUE.equals(response.get("found"))) {
+                return null;
+            }
+            return this.entity(path(response, "_source"));
+        }
+        Iterator<Map<String, Object>> hits = this.searchHits(this.index(null), this.uniqueQuery(key, uniqueField), 0, 1);
+        return hits.hasNext() ? this.entity(path(hits.next(), "_source")) : null;
+    }
+
+    private Map<String, Object> uniqueQuery(Object key, Field uniqueField) {
+        Map<String, Object> body = new LinkedHashMap<String, Object>();
+        body.put("query", Collections.singletonMap("term", Collections.singletonMap(uniqueField.getColumnName(), key)));
+        return body;
+    }
+
+    @Override
+    public T getEntity(SearchCriteria criteria) {
+        checkRowMapper(criteria);
+        Iterator<Map<String, Object>> hits = this.hits(criteria, true);
+        return hits.hasNext() ? this.entity(path(hits.next(), "_source")) : null;
+    }
+
+    @Override
+    public List<T> getList() {
+        return this.getList(null);
+    }
+
+    @Override
+    public List<T> getList(SearchCriteria criteria) {
+        final List<T> list = new ArrayList<T>();
+        this.forEach(criteria, new Consumer<T>() {
+            @Override
+            public void accept(T t) {
+                list.add(t);
+            }
+        });
+        return list;
+    }
+
+    @Override
+    public void forEach(SearchCriteria criteria, Consumer<T> consumer) {
+        checkRowMapper(criteria);
+        Iterator<Map<String, Object>> hits = this.hits(criteria, false);
+        while (hits.hasNext()) {
+            consumer.accept(this.entity(path(hits.next(), "_source")));
+        }
+    }
+
+    @Override
+    public Stream<T> stream(SearchCriteria criteria) {
+        checkRowMapper(criteria);
+        final Iterator<Map<String, Object>> hits = this.hits(criteria, false);
+        Iterator<T> entities = new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return hits.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return entity(path(hits.next(), "_source"));
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(entities, Spliterator.ORDERED), false);
+    }
+
+    @Override
+    public <Z> Set<Z> firstList(SearchCriteria criteria) {
+        Set<Z> list = new LinkedHashSet<Z>();
+        List<String> columns = this.columns(criteria);
+        Iterator<Map<String, Object>> hits = this.hits(criteria, false);
+        while (hits.hasNext()) {
+            Object o = this.columnValue(path(hits.next(), "_source"), columns.get(0));
+            if (o == null) {
+                continue;
+            }
+            if (o instanceof Number) {
+                list.add((Z) o);
+            } else {
+                list.add((Z) ("'" + o.toString().trim() + "'"));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public <P, Q> Map<P, Q> getMap(SearchCriteria criteria) {
+        checkRowMapper(criteria);
+        Map<P, Q> map = new LinkedHashMap<P, Q>();
+        List<String> columns = this.columns(criteria);
+        if (columns.size() < 2) {
+            throw new IllegalArgumentException("get map requires two fields");
+        }
+        Iterator<Map<String, Object>> hits = this.hits(criteria, false);
+        while (hits.hasNext()) {
+            Map<String, Object> source = path(hits.next(), "_source");
+            map.put((P) this.columnValue(source, columns.get(0)), (Q) this.columnValue(source, columns.get(1)));
+        }
+        return map;
+    }
+
+    @Override
+    public <P> P scalar(SearchCriteria criteria) {
+        return this.getFieldValue(criteria);
+    }
+
+    @Override
+    public <X> X getFieldValue(SearchCriteria criteria) {
+        List<String> columns = this.columns(criteria);
+        Iterator<Map<String, Object>> hits = this.hits(criteria, true);
+        return hits.hasNext() ? (X) this.columnValue(path(hits.next(), "_source"), columns.get(0)) : null;
+    }
+
+    @Override
+    public <X> X getFieldValue(String fieldName, Object key) {
+        return this.getFieldValue(fieldName, key, CONFIG_KEY_DB.ORM_PRIMARY_KEY_UNIQUE);
+    }
+
+    @Override
+    public <X> X getFieldValue(String fieldName, Object key, String uniqueKey) {
+        T model = this.getEntity(key, uniqueKey);
+        if (model == null) {
+            return null;
+        }
+        if (fieldName.contains(".")) {
+            fieldName = fieldName.substring(fieldName.indexOf('.') + 1);
+        }
+        return (X) this.methodAccessor.get(model, fieldName);
+    }
+
+    private List<String> columns(SearchCriteria criteria) {
+        List<String> columns = criteria == null ? null : this.criteriaProcessor.fields(criteria.getFields());
+        if (columns == null || columns.isEmpty()) {
+            throw new IllegalArgumentException("fields required");
+        }
+        return columns;
+    }
+
+    private Object columnValue(Map<String, Object> source, String column) {
+        return source == null ? null : value(this.field(column), source.get(column));
+    }
+
+    @Override
+    public Long getCount(Object key) {
+        return this.getCount(key, CONFIG_KEY_DB.ORM_PRIMARY_KEY_UNIQUE);
+    }
+
+    @Override
+    public Long getCount(Object key, String uniqueKey) {
+        Map<String, Object> response = this.client.execute("POST", this.index(null) + "/_count", this.uniqueQuery(key, this.entityManager.getUniqueField(uniqueKey)));
+        return count(response);
+    }
+
+    @Override
+    public Long getCount(SearchCriteria criteria) {
+        Map<String, Object> body = new LinkedHashMap<String, Object>();
+        body.put("query", this.criteriaProcessor.query(criteria == null ? null : criteria.getWhere()));
+        Map<String, Object> response = this.client.execute("POST", this.index(criteria == null ? null : criteria.getTableSuffix()) + "/_count", body);
+        return count(response);
+    }
+
+    private static Long count(Map<String, Object> response) {
+        Number count = response == null ? null : (Number) response.get("count");
+        return count == null ? 0L : count.longValue();
+    }
+
+    @Override
+    public <X> X getAggregate(String fieldName, AGGREGATE aggregate) {
+        SearchCriteria searchCriteria = new SearchCriteria();
+        searchCriteria.setFields(fieldName);
+        return this.getAggregate(aggregate, searchCriteria);
+    }
+
+    @Override
+    public <X> X getAggregate(AGGREGATE aggregate, SearchCriteria searchCriteria) {
+        Map<String, Object> body = new LinkedHashMap<String, Object>();
+        body.put("size", 0);
+        body.put("query", this.criteriaProcessor.query(searchCriteria.getWhere()));
+        body.put("aggs", this.criteriaProcessor.aggregation(AGGREGATION, aggregate, searchCriteria.getFields()));
+        Map<String, Object> response = this.client.execute("POST", this.index(searchCriteria.getTableSuffix()) + "/_search", body);
+        Object value = response == null ? null : path(response, "aggregations", AGGREGATION, "value");
+        if (value == null) {
+            return null;
+        }
+        switch (aggregate) {
+            case COUNT:
+                return (X) (Long) ((Number) value).longValue();
+            case MAX:
+            case MIN:
+                return (X) value(this.field(this.criteriaProcessor.fields(searchCriteria.getFields()).get(0)), value);
+            default:
+                return (X) value;
+        }
+    }
+
+    /**
+     * 以search_after实现 标记内容为上一页最后一个命中的sort值
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public KeysetPage<T> getPage(SearchCriteria criteria, String continuationToken, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("page size must be positive");
+        }
+        checkRowMapper(criteria);
+        Map<String, Object> body = new LinkedHashMap<String, Object>();
+        body.put("query", this.criteriaProcessor.query(criteria.getWhere()));
+        List<String> columns = this.criteriaProcessor.fields(criteria.getFields());
+        if (columns != null) {
+            body.put("_source", columns);
+        }
+        body.put("sort", this.criteriaProcessor.sort(criteria.getOrderCriteriaList(), this.entityManager.getPrimary().getColumnName()));
+        body.put("size", pageSize + 1);
+        if (continuationToken != null) {
+            try {
+                body.put("search_after", Json.parse(new String(Base64.getUrlDecoder().decode(continuationToken), StandardCharsets.UTF_8)));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("invalid continuation token", e);
+            }
+        }
+        Map<String, Object> response = this.client.execute("POST", this.index(criteria.getTableSuffix()) + "/_search", body);
+        List<Map<String, Object>> hits = response == null ? null : (List<Map<String, Object>>) path(response, "hits", "hits");
+        List<T> list = new ArrayList<T>(pageSize);
+        if (hits == null) {
+            return new KeysetPage<T>(list, null);
+        }
+        for (int i = 0; i < hits.size() && i < pageSize; i++) {
+            list.add(this.entity((Map<String, Object>) path(hits.get(i), "_source")));
+        }
+        String token = null;
+        if (hits.size() > pageSize) {
+            String sort = Json.toJson(hits.get(pageSize - 1).get("sort"));
+            token = Base64.getUrlEncoder().withoutPadding().encodeToString(sort.getBytes(StandardCharsets.UTF_8));
+        }
+        return new KeysetPage<T>(list, token);
+    }
+
+    private Iterator<Map<String, Object>> hits(SearchCriteria criteria, boolean single) {
+        Map<String, Object> body = new LinkedHashMap<String, Object>();
+        List<Object> tableSuffix = null;
+        if (criteria == null) {
+            body.put("query", this.criteriaProcessor.query(null));
+        } else {
+            tableSuffix = criteria.getTableSuffix();
+            body.put("query", this.criteriaProcessor.query(criteria.getWhere()));
+            List<String> columns = this.criteriaProcessor.fields(criteria.getFields());
+            if (columns != null) {
+                body.put("_source", columns);
+            }
+            if (Boolean.TRUE.equals(criteria.getDistinct())) {
+                if (columns == null || columns.size() != 1) {
+                    throw new UnsupportedOperationException("distinct requires exactly one field");
+                }
+                body.put("collapse", Collections.singletonMap("field", columns.get(0)));
+            }
+        }
+        body.put("sort", this.criteriaProcessor.sort(criteria == null ? null : criteria.getOrderCriteriaList(), this.entityManager.getPrimary().getColumnName()));
+        long[] page = this.criteriaProcessor.page(criteria);
+        long limit = single ? 1 : page[1];
+        return this.searchHits(this.index(tableSuffix), body, page[0], limit);
+    }
+}
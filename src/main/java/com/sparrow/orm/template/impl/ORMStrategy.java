@@ -20,18 +20,27 @@ package com.sparrow.orm.template.impl;
 import com.sparrow.enums.DIALECT;
 import com.sparrow.enums.STATUS_RECORD;
 import com.sparrow.orm.Dialect;
+import com.sparrow.orm.JDBCExecutor;
+import com.sparrow.orm.JDBCTemplate;
+import com.sparrow.orm.cache.EntityCache;
 import com.sparrow.orm.query.AGGREGATE;
 import com.sparrow.orm.query.SearchCriteria;
 import com.sparrow.orm.query.UpdateCriteria;
+import com.sparrow.orm.template.AsyncSparrowDaoSupport;
+import com.sparrow.orm.template.BULK_INSERT_MODE;
+import com.sparrow.orm.template.KeysetPage;
 import com.sparrow.orm.template.SparrowDaoSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * @author harry
@@ -59,7 +68,7 @@ public class ORMStrategy<T, I> implements SparrowDaoSupport<T, I> {
                 ormDaoSupport = new DBORMTemplate<T, I>(clazz);
                 break;
             case ELASTIC_SEARCH:
-                ormDaoSupport = null;
+                ormDaoSupport = new ElasticORMTemplate<T, I>(clazz);
                 break;
             default:
                 ormDaoSupport = new DBORMTemplate<T, I>(clazz);
@@ -68,6 +77,47 @@ public class ORMStrategy<T, I> implements SparrowDaoSupport<T, I> {
 
     private SparrowDaoSupport<T, I> ormDaoSupport;
 
+    private volatile AsyncSparrowDaoSupport<T, I> async;
+
+    /**
+     * 异步调用 在共享的JDBCExecutor上执行
+     *
+     * @return
+     */
+    public AsyncSparrowDaoSupport<T, I> async() {
+        if (this.async == null) {
+            synchronized (this) {
+                if (this.async == null) {
+                    JDBCTemplate jdbcTemplate = this.ormDaoSupport instanceof DBORMTemplate ?
+                        ((DBORMTemplate<T, I>) this.ormDaoSupport).jdbcSupport : null;
+                    this.async = new AsyncORMTemplate<T, I>(this, jdbcTemplate, JDBCExecutor.getDefault());
+                }
+            }
+        }
+        return this.async;
+    }
+
+    /**
+     * 为主键及唯一键查询启用实体缓存 子类构造时调用
+     *
+     * @param maxSize   最大缓存实体数
+     * @param ttlMillis 过期时间 必须大于0 限定事务提交前被缓存的旧数据的存活时间
+     */
+    protected void enableEntityCache(long maxSize, long ttlMillis) {
+        if (this.ormDaoSupport instanceof DBORMTemplate) {
+            ((DBORMTemplate<T, I>) this.ormDaoSupport).setEntityCache(new EntityCache<T>(maxSize, ttlMillis));
+        }
+    }
+
+    /**
+     * 启用脏字段跟踪 update(T)只写加载后变化的列 子类构造时调用
+     */
+    protected void enableDirtyTracking() {
+        if (this.ormDaoSupport instanceof DBORMTemplate) {
+            ((DBORMTemplate<T, I>) this.ormDaoSupport).setDirtyTracking(true);
+        }
+    }
+
     @Override
     public <P, Q> Map<P, Q> getMap(SearchCriteria criteria) {
         return this.ormDaoSupport.getMap(criteria);
@@ -98,6 +148,16 @@ public class ORMStrategy<T, I> implements SparrowDaoSupport<T, I> {
         return this.ormDaoSupport.getList(criteria);
     }
 
+    @Override
+    public void forEach(SearchCriteria criteria, Consumer<T> consumer) {
+        this.ormDaoSupport.forEach(criteria, consumer);
+    }
+
+    @Override
+    public Stream<T> stream(SearchCriteria criteria) {
+        return this.ormDaoSupport.stream(criteria);
+    }
+
     @Override
     public <P> P scalar(SearchCriteria criteria) {
         return this.ormDaoSupport.scalar(criteria);
@@ -123,6 +183,26 @@ public class ORMStrategy<T, I> implements SparrowDaoSupport<T, I> {
         return this.ormDaoSupport.update(model);
     }
 
+    @Override
+    public int batchInsert(Collection<T> models) {
+        return this.ormDaoSupport.batchInsert(models);
+    }
+
+    @Override
+    public int bulkInsert(Collection<T> models, BULK_INSERT_MODE mode) {
+        return this.ormDaoSupport.bulkInsert(models, mode);
+    }
+
+    @Override
+    public int batchUpdate(Collection<T> models) {
+        return this.ormDaoSupport.batchUpdate(models);
+    }
+
+    @Override
+    public KeysetPage<T> getPage(SearchCriteria criteria, String continuationToken, int pageSize) {
+        return this.ormDaoSupport.getPage(criteria, continuationToken, pageSize);
+    }
+
     @Override
     public int changeStatus(String ids, STATUS_RECORD status) {
         return this.ormDaoSupport.changeStatus(ids, status);
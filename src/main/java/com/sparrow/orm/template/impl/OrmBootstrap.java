@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.template.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 启动时扫描实体包并行预热实体元数据
+ * <p>
+ * 对每个带@Table或@Entity的类构建EntityManager、MethodAccessor代理及增删改语句，
+ * 并创建对应的JDBCTemplate。结果集映射器依赖查询返回的列结构，仍在首次查询时创建。
+ * <p>
+ * 实体包可由参数或系统属性sparrow.orm.entity.packages(逗号分隔)指定
+ *
+ * @author harry
+ */
+public class OrmBootstrap {
+    private static Logger logger = LoggerFactory.getLogger(OrmBootstrap.class);
+
+    public static final String ENTITY_PACKAGES = "sparrow.orm.entity.packages";
+
+    private OrmBootstrap() {
+    }
+
+    /**
+     * 按系统属性配置的实体包预热
+     *
+     * @return 预热成功的实体数
+     */
+    public static int bootstrap() {
+        String packages = System.getProperty(ENTITY_PACKAGES);
+        if (packages == null || packages.trim().isEmpty()) {
+            return 0;
+        }
+        return bootstrap(packages.split(","));
+    }
+
+    public static int bootstrap(String... packages) {
+        long start = System.currentTimeMillis();
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader == null) {
+            classLoader = OrmBootstrap.class.getClassLoader();
+        }
+        Set<Class<?>> entityClasses = new LinkedHashSet<Class<?>>();
+        for (String packageName : packages) {
+            entityClasses.addAll(scan(classLoader, packageName.trim()));
+        }
+        int succeed = warmUp(entityClasses, Runtime.getRuntime().availableProcessors());
+        logger.info("orm bootstrap {}/{} entities in {}ms", succeed, entityClasses.size(), System.currentTimeMillis() - start);
+        return succeed;
+    }
+
+    /**
+     * 并行预热 单个实体失败只记录日志
+     *
+     * @param entityClasses
+     * @param threads
+     * @return 预热成功的实体数
+     */
+    public static int warmUp(Set<Class<?>> entityClasses, int threads) {
+        if (entityClasses.isEmpty()) {
+            return 0;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, entityClasses.size())));
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>(entityClasses.size());
+            for (final Class<?> entityClass : entityClasses) {
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        DBORMTemplate.warmUp(entityClass);
+                    }
+                }));
+            }
+            int succeed = 0;
+            int i = 0;
+            for (Class<?> entityClass : entityClasses) {
+                try {
+                    futures.get(i++).get();
+                    succeed++;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return succeed;
+                } catch (Exception e) {
+                    logger.error("warm up entity error " + entityClass.getName(), e);
+                }
+            }
+            return succeed;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 扫描包(含子包)下带@Table或@Entity的类 支持目录及jar
+     */
+    public static Set<Class<?>> scan(ClassLoader classLoader, String packageName) {
+        Set<Class<?>> entityClasses = new LinkedHashSet<Class<?>>();
+        String path = packageName.replace('.', '/');
+        try {
+            Enumeration<URL> resources = classLoader.getResources(path);
+            while (resources.hasMoreElements()) {
+                URL url = resources.nextElement();
+                if ("file".equals(url.getProtocol())) {
+                    scanDirectory(classLoader, new File(URLDecoder.decode(url.getFile(), "UTF-8")), packageName, entityClasses);
+                } else if ("jar".equals(url.getProtocol())) {
+                    JarFile jarFile = ((JarURLConnection) url.openConnection()).getJarFile();
+                    Enumeration<JarEntry> entries = jarFile.entries();
+                    while (entries.hasMoreElements()) {
+                        String name = entries.nextElement().getName();
+                        if (name.startsWith(path + "/") && name.endsWith(".class")) {
+                            addIfEntity(classLoader, name.substring(0, name.length() - 6).replace('/', '.'), entityClasses);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("scan entity package error " + packageName, e);
+        }
+        return entityClasses;
+    }
+
+    private static void scanDirectory(ClassLoader classLoader, File directory, String packageName,
+        Set<Class<?>> entityClasses) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                scanDirectory(classLoader, file, packageName + "." + file.getName(), entityClasses);
+            } else if (file.getName().endsWith(".class")) {
+                String simpleName = file.getName().substring(0, file.getName().length() - 6);
+                addIfEntity(classLoader, packageName + "." + simpleName, entityClasses);
+            }
+        }
+    }
+
+    private static void addIfEntity(ClassLoader classLoader, String className, Set<Class<?>> entityClasses) {
+        if (className.endsWith("package-info") || className.endsWith("module-info")) {
+            return;
+        }
+        try {
+            Class<?> clazz = Class.forName(className, false, classLoader);
+            if (clazz.isAnnotationPresent(Table.class) || clazz.isAnnotationPresent(Entity.class)) {
+                entityClasses.add(clazz);
+            }
+        } catch (Throwable e) {
+            logger.debug("skip class " + className, e);
+        }
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.template.impl;
+
+import com.sparrow.cg.MethodAccessor;
+import com.sparrow.enums.ORDER;
+import com.sparrow.orm.JDBCTemplate;
+import com.sparrow.orm.query.AGGREGATE;
+import com.sparrow.orm.query.OrderCriteria;
+import com.sparrow.orm.query.SearchCriteria;
+import com.sparrow.orm.query.sql.LimitClause;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 跨库跨表查询 将同一个SearchCriteria并行发往所有分片后合并
+ * <p>
+ * 每个分片按各自的数据源后缀(JDBCTemplate.bindDataSourceSuffix)及分表后缀执行，
+ * 列表按OrderCriteria归并排序后再统一做offset/limit，每个分片只取前offset+limit行；
+ * 聚合COUNT/SUM求和，MIN/MAX取极值，AVG由各分片的SUM与COUNT合成。
+ * 分片在工作线程上执行，不参与调用方的事务
+ *
+ * @author harry
+ */
+public class ScatterGather<T, I> {
+    private static volatile ExecutorService defaultExecutor;
+
+    private final DBORMTemplate<T, I> template;
+
+    private final List<Shard> shards;
+
+    private final ExecutorService executor;
+
+    public ScatterGather(DBORMTemplate<T, I> template, List<Shard> shards) {
+        this(template, shards, null);
+    }
+
+    /**
+     * @param template
+     * @param shards
+     * @param executor 为null时使用共享的有界线程池
+     */
+    public ScatterGather(DBORMTemplate<T, I> template, List<Shard> shards, ExecutorService executor) {
+        if (shards == null || shards.isEmpty()) {
+            throw new IllegalArgumentException("shards required");
+        }
+        this.template = template;
+        this.shards = shards;
+        this.executor = executor == null ? defaultExecutor() : executor;
+    }
+
+    /**
+     * 有界队列，队列满时由调用线程执行，避免分片任务无限堆积
+     *
+     * @param threads
+     * @param queueSize
+     * @return
+     */
+    public static ExecutorService newExecutor(int threads, int queueSize) {
+        final AtomicInteger index = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(queueSize),
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "sparrow-scatter-" + index.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private static ExecutorService defaultExecutor() {
+        if (defaultExecutor == null) {
+            synchronized (ScatterGather.class) {
+                if (defaultExecutor == null) {
+                    int threads = Runtime.getRuntime().availableProcessors() * 2;
+                    ThreadPoolExecutor executor = (ThreadPoolExecutor) newExecutor(threads, 1024);
+                    executor.allowCoreThreadTimeOut(true);
+                    defaultExecutor = executor;
+                }
+            }
+        }
+        return defaultExecutor;
+    }
+
+    public List<T> getList(final SearchCriteria criteria) {
+        long[] page = LimitClause.parse(criteria);
+        final long offset = page[0];
+        final long limit = page[1];
+        final String limitClause = limit < 0 ? null : " limit " + (offset + limit);
+        List<List<T>> results = this.scatter(new ShardCall<List<T>>() {
+            @Override
+            public List<T> call(Shard shard) {
+                List<T> list = new ArrayList<T>();
+                template.fill(list, criteria, template.jdbcSupport.executeQueryOrThrow(
+                    template.getSelectSql(null, criteria, shard.getTableSuffix(), limitClause)));
+                return list;
+            }
+        });
+        List<T> merged = this.merge(results, criteria.getOrderCriteriaList());
+        if (offset >= merged.size()) {
+            return new ArrayList<T>();
+        }
+        int to = limit < 0 ? merged.size() : (int) Math.min(merged.size(), offset + limit);
+        return new ArrayList<T>(merged.subList((int) offset, to));
+    }
+
+    /**
+     * 未指定fields时为行数(COUNT(*))，否则为字段非null值的个数
+     */
+    public Long getCount(SearchCriteria criteria) {
+        Number count = this.getAggregate(AGGREGATE.COUNT, criteria);
+        return count == null ? 0L : count.longValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    public <X> X getAggregate(AGGREGATE aggregate, final SearchCriteria criteria) {
+        if (aggregate == AGGREGATE.AVG) {
+            Number sum = this.getAggregate(AGGREGATE.SUM, criteria);
+            Number count = this.getAggregate(AGGREGATE.COUNT, criteria);
+            if (sum == null || count == null || count.longValue() == 0) {
+                return null;
+            }
+            return (X) new BigDecimal(sum.toString()).divide(BigDecimal.valueOf(count.longValue()), 4, RoundingMode.HALF_UP);
+        }
+        final AGGREGATE shardAggregate = aggregate;
+        List<Object> results = this.scatter(new ShardCall<Object>() {
+            @Override
+            public Object call(Shard shard) {
+                return template.jdbcSupport.executeScalarOrThrow(
+                    template.getSelectSql(shardAggregate, criteria, shard.getTableSuffix(), null));
+            }
+        });
+        Object merged = null;
+        for (Object value : results) {
+            if (value == null) {
+                continue;
+            }
+            if (merged == null) {
+                merged = value;
+                continue;
+            }
+            switch (aggregate) {
+                case COUNT:
+                case SUM:
+                    merged = add((Number) merged, (Number) value);
+                    break;
+                case MAX:
+                    merged = compare(value, merged) > 0 ? value : merged;
+                    break;
+                case MIN:
+                    merged = compare(value, merged) < 0 ? value : merged;
+                    break;
+                default:
+                    throw new UnsupportedOperationException(aggregate.name());
+            }
+        }
+        if (merged == null && aggregate == AGGREGATE.COUNT) {
+            merged = 0L;
+        }
+        return (X) merged;
+    }
+
+    private static Number add(Number a, Number b) {
+        if (a instanceof BigDecimal || b instanceof BigDecimal || a instanceof Double || b instanceof Double
+            || a instanceof Float || b instanceof Float) {
+            return new BigDecimal(a.toString()).add(new BigDecimal(b.toString()));
+        }
+        return a.longValue() + b.longValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Object a, Object b) {
+        if (a == b) {
+            return 0;
+        }
+        // 与mysql一致 null排在升序最前
+        if (a == null) {
+            return -1;
+        }
+        if (b == null) {
+            return 1;
+        }
+        if (a instanceof Number && b instanceof Number && a.getClass() != b.getClass()) {
+            return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString()));
+        }
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+
+    /**
+     * 各分片结果已按同一顺序排好 k路归并
+     */
+    private List<T> merge(List<List<T>> results, final List<OrderCriteria> orderCriteriaList) {
+        int total = 0;
+        for (List<T> result : results) {
+            total += result.size();
+        }
+        List<T> merged = new ArrayList<T>(total);
+        if (orderCriteriaList == null || orderCriteriaList.isEmpty()) {
+            for (List<T> result : results) {
+                merged.addAll(result);
+            }
+            return merged;
+        }
+        final MethodAccessor methodAccessor = this.template.getPrepareORM().getMethodAccessor();
+        final Comparator<T> comparator = new Comparator<T>() {
+            @Override
+            public int compare(T a, T b) {
+                for (OrderCriteria orderCriteria : orderCriteriaList) {
+                    String property = orderCriteria.getField().getName();
+                    int c = ScatterGather.compare(methodAccessor.get(a, property), methodAccessor.get(b, property));
+                    if (c != 0) {
+                        return orderCriteria.getOrder() == ORDER.DESC ? -c : c;
+                    }
+                }
+                return 0;
+            }
+        };
+        PriorityQueue<Cursor<T>> queue = new PriorityQueue<Cursor<T>>(Math.max(1, results.size()), new Comparator<Cursor<T>>() {
+            @Override
+            public int compare(Cursor<T> a, Cursor<T> b) {
+                int c = comparator.compare(a.current(), b.current());
+                return c != 0 ? c : a.shard - b.shard;
+            }
+        });
+        for (int i = 0; i < results.size(); i++) {
+            if (!results.get(i).isEmpty()) {
+                queue.add(new Cursor<T>(i, results.get(i)));
+            }
+        }
+        while (!queue.isEmpty()) {
+            Cursor<T> cursor = queue.poll();
+            merged.add(cursor.current());
+            if (cursor.advance()) {
+                queue.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * 并行执行 结果按分片顺序返回；任一分片失败时取消其余分片并抛出
+     */
+    private <R> List<R> scatter(final ShardCall<R> call) {
+        List<Future<R>> futures = new ArrayList<Future<R>>(this.shards.size());
+        boolean completed = false;
+        try {
+            for (final Shard shard : this.shards) {
+                futures.add(this.executor.submit(new Callable<R>() {
+                    @Override
+                    public R call() throws Exception {
+                        String previous = JDBCTemplate.bindDataSourceSuffix(shard.getDataSourceSuffix());
+                        try {
+                            return call.call(shard);
+                        } finally {
+                            JDBCTemplate.bindDataSourceSuffix(previous);
+                        }
+                    }
+                }));
+            }
+            List<R> results = new ArrayList<R>(futures.size());
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+            completed = true;
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            if (!completed) {
+                for (Future<R> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    private interface ShardCall<R> {
+        R call(Shard shard);
+    }
+
+    private static class Cursor<T> {
+        private final int shard;
+        private final List<T> list;
+        private int index;
+
+        Cursor(int shard, List<T> list) {
+            this.shard = shard;
+            this.list = list;
+        }
+
+        T current() {
+            return this.list.get(this.index);
+        }
+
+        boolean advance() {
+            return ++this.index < this.list.size();
+        }
+    }
+
+    /**
+     * 分片 数据源后缀与分表后缀
+     */
+    public static class Shard {
+        private final String dataSourceSuffix;
+        private final List<Object> tableSuffix;
+
+        /**
+         * @param dataSourceSuffix 为null时按分库策略取当前后缀
+         * @param tableSuffix      为null或空时不分表
+         */
+        public Shard(String dataSourceSuffix, List<Object> tableSuffix) {
+            this.dataSourceSuffix = dataSourceSuffix;
+            this.tableSuffix = tableSuffix == null ? null : Collections.unmodifiableList(tableSuffix);
+        }
+
+        public String getDataSourceSuffix() {
+            return dataSourceSuffix;
+        }
+
+        public List<Object> getTableSuffix() {
+            return tableSuffix;
+        }
+    }
+}
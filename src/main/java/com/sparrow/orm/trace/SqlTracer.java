@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.trace;
+
+import com.sparrow.orm.Parameter;
+import java.util.List;
+
+/**
+ * SQL执行跟踪
+ * <p>
+ * isEnabled为false时JDBCTemplate不计时，也不构造任何日志字符串
+ *
+ * @author harry
+ */
+public interface SqlTracer {
+    boolean isEnabled();
+
+    /**
+     * 语句执行完成后回调
+     *
+     * @param command      参数化的SQL
+     * @param parameters   绑定的参数，批量或非参数化语句为null
+     * @param elapsedNanos 获取语句、绑定参数及执行的耗时
+     */
+    void trace(String command, List<Parameter> parameters, long elapsedNanos);
+}
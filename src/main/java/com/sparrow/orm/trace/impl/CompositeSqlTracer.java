@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.trace.impl;
+
+import com.sparrow.orm.Parameter;
+import com.sparrow.orm.trace.SqlTracer;
+import java.util.List;
+
+/**
+ * 组合多个跟踪器 如同时输出日志并记录N+1
+ *
+ * @author harry
+ */
+public class CompositeSqlTracer implements SqlTracer {
+    private final SqlTracer[] tracers;
+
+    public CompositeSqlTracer(SqlTracer... tracers) {
+        this.tracers = tracers;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        for (SqlTracer tracer : this.tracers) {
+            if (tracer.isEnabled()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void trace(String command, List<Parameter> parameters, long elapsedNanos) {
+        for (SqlTracer tracer : this.tracers) {
+            if (tracer.isEnabled()) {
+                tracer.trace(command, parameters, elapsedNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.trace.impl;
+
+import com.sparrow.orm.Parameter;
+import com.sparrow.orm.trace.SqlTracer;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 基于slf4j的SQL跟踪
+ * <p>
+ * 超过慢查询阈值的语句以WARN输出，其余语句在DEBUG开启时按采样率输出，
+ * 只有确定要输出时才渲染带参数的SQL
+ *
+ * @author harry
+ */
+public class LoggingSqlTracer implements SqlTracer {
+    private static Logger logger = LoggerFactory.getLogger(LoggingSqlTracer.class);
+    /**
+     * 慢查询阈值 小于等于0不记录慢查询
+     */
+    private final long slowThresholdNanos;
+    /**
+     * DEBUG下每sampleRate条输出一条
+     */
+    private final int sampleRate;
+
+    public LoggingSqlTracer() {
+        this(1000L, 1);
+    }
+
+    public LoggingSqlTracer(long slowThresholdMillis, int sampleRate) {
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+        this.sampleRate = sampleRate < 1 ? 1 : sampleRate;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return (this.slowThresholdNanos > 0 && logger.isWarnEnabled()) || logger.isDebugEnabled();
+    }
+
+    @Override
+    public void trace(String command, List<Parameter> parameters, long elapsedNanos) {
+        if (this.slowThresholdNanos > 0 && elapsedNanos >= this.slowThresholdNanos) {
+            if (logger.isWarnEnabled()) {
+                logger.warn("SLOW SQL " + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "ms:" + render(command, parameters));
+            }
+            return;
+        }
+        if (!logger.isDebugEnabled()) {
+            return;
+        }
+        if (this.sampleRate > 1 && ThreadLocalRandom.current().nextInt(this.sampleRate) != 0) {
+            return;
+        }
+        logger.debug("SQL:" + render(command, parameters));
+    }
+
+    /**
+     * 将参数值依次填入占位符 仅用于日志
+     *
+     * @param command
+     * @param parameters
+     * @return
+     */
+    public static String render(String command, List<Parameter> parameters) {
+        if (parameters == null || parameters.isEmpty()) {
+            return command;
+        }
+        StringBuilder sql = new StringBuilder(command.length() + parameters.size() * 8);
+        int parameterIndex = 0;
+        for (int i = 0; i < command.length(); i++) {
+            char c = command.charAt(i);
+            if (c == '?' && parameterIndex < parameters.size()) {
+                Parameter parameter = parameters.get(parameterIndex++);
+                sql.append(parameter == null ? null : parameter.getParameterValue());
+                continue;
+            }
+            sql.append(c);
+        }
+        return sql.toString();
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.trace.impl;
+
+import com.sparrow.orm.Parameter;
+import com.sparrow.orm.trace.SqlTracer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 按工作单元(一次请求或一个测试)记录当前线程执行的语句，识别N+1及慢查询
+ * <p>
+ * 同一语句结构在一个工作单元内以不同参数执行达到阈值次数即视为N+1；
+ * 来源取调用栈中第一个ORM之外的帧，只在语句结构首次出现及慢查询时采集。
+ * 没有线程处于工作单元时isEnabled为false，不产生任何开销
+ * <pre>
+ * QueryRecorder recorder = new QueryRecorder(5, 200L, true);
+ * JDBCTemplate.setSqlTracer(new CompositeSqlTracer(new LoggingSqlTracer(), recorder));
+ * recorder.begin();
+ * try { ... } finally { recorder.end(); }
+ * </pre>
+ *
+ * @author harry
+ */
+public class QueryRecorder implements SqlTracer {
+    private static Logger logger = LoggerFactory.getLogger(QueryRecorder.class);
+
+    private static final String ORM_PACKAGE = "com.sparrow.orm.";
+    /**
+     * 每个语句结构记录的不同参数组数上限
+     */
+    private static final int MAX_FINGERPRINTS = 1024;
+
+    private final int repeatThreshold;
+
+    private final long slowThresholdNanos;
+    /**
+     * 存在问题时end()抛出异常 用于测试用例
+     */
+    private final boolean failOnViolation;
+
+    private final ThreadLocal<UnitOfWork> unitOfWork = new ThreadLocal<UnitOfWork>();
+
+    private final AtomicInteger activeUnits = new AtomicInteger();
+
+    public QueryRecorder() {
+        this(5, 1000L, false);
+    }
+
+    /**
+     * @param repeatThreshold     同一结构不同参数的执行次数达到该值视为N+1
+     * @param slowThresholdMillis 慢查询阈值 小于等于0不检测
+     * @param failOnViolation     end()时存在N+1或慢查询则抛出IllegalStateException
+     */
+    public QueryRecorder(int repeatThreshold, long slowThresholdMillis, boolean failOnViolation) {
+        this.repeatThreshold = Math.max(2, repeatThreshold);
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+        this.failOnViolation = failOnViolation;
+    }
+
+    /**
+     * 开始当前线程的工作单元 已开始时忽略
+     */
+    public void begin() {
+        if (this.unitOfWork.get() != null) {
+            return;
+        }
+        this.unitOfWork.set(new UnitOfWork());
+        this.activeUnits.incrementAndGet();
+    }
+
+    /**
+     * 结束当前线程的工作单元
+     *
+     * @return 未开始时返回null
+     */
+    public Report end() {
+        UnitOfWork unit = this.unitOfWork.get();
+        if (unit == null) {
+            return null;
+        }
+        this.unitOfWork.remove();
+        this.activeUnits.decrementAndGet();
+        Report report = unit.report(this.repeatThreshold);
+        if (report.isClean()) {
+            return report;
+        }
+        if (this.failOnViolation) {
+            throw new IllegalStateException(report.toString());
+        }
+        logger.warn(report.toString());
+        return report;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return this.activeUnits.get() > 0;
+    }
+
+    @Override
+    public void trace(String command, List<Parameter> parameters, long elapsedNanos) {
+        UnitOfWork unit = this.unitOfWork.get();
+        if (unit == null) {
+            return;
+        }
+        Shape shape = unit.shapes.get(command);
+        if (shape == null) {
+            shape = new Shape(command, origin());
+            unit.shapes.put(command, shape);
+        }
+        shape.executions++;
+        shape.elapsedNanos += elapsedNanos;
+        if (shape.fingerprints.size() < MAX_FINGERPRINTS) {
+            shape.fingerprints.add(fingerprint(parameters));
+        }
+        if (this.slowThresholdNanos > 0 && elapsedNanos >= this.slowThresholdNanos) {
+            unit.slow.add(new Statement(LoggingSqlTracer.render(command, parameters), origin(), 1, elapsedNanos));
+        }
+    }
+
+    private static int fingerprint(List<Parameter> parameters) {
+        if (parameters == null) {
+            return 0;
+        }
+        int hash = 1;
+        for (Parameter parameter : parameters) {
+            Object value = parameter == null ? null : parameter.getParameterValue();
+            hash = 31 * hash + (value == null ? 0 : value.hashCode());
+        }
+        return hash;
+    }
+
+    /**
+     * 调用栈中第一个ORM之外的帧
+     */
+    private static String origin() {
+        for (StackTraceElement element : new Throwable().getStackTrace()) {
+            if (!element.getClassName().startsWith(ORM_PACKAGE)) {
+                return element.toString();
+            }
+        }
+        return null;
+    }
+
+    private static class UnitOfWork {
+        final Map<String, Shape> shapes = new LinkedHashMap<String, Shape>();
+        final List<Statement> slow = new ArrayList<Statement>();
+
+        Report report(int repeatThreshold) {
+            List<Statement> repeated = new ArrayList<Statement>();
+            int executions = 0;
+            for (Shape shape : this.shapes.values()) {
+                executions += shape.executions;
+                if (shape.fingerprints.size() >= repeatThreshold) {
+                    repeated.add(new Statement(shape.command, shape.origin, shape.executions, shape.elapsedNanos));
+                }
+            }
+            return new Report(executions, repeated, this.slow);
+        }
+    }
+
+    private static class Shape {
+        final String command;
+        final String origin;
+        final Set<Integer> fingerprints = new HashSet<Integer>();
+        int executions;
+        long elapsedNanos;
+
+        Shape(String command, String origin) {
+            this.command = command;
+            this.origin = origin;
+        }
+    }
+
+    /**
+     * 问题语句
+     */
+    public static class Statement {
+        private final String command;
+        private final String origin;
+        private final int executions;
+        private final long elapsedNanos;
+
+        Statement(String command, String origin, int executions, long elapsedNanos) {
+            this.command = command;
+            this.origin = origin;
+            this.executions = executions;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+
+        /**
+         * @return 发起调用的代码位置 类.方法(文件:行)
+         */
+        public String getOrigin() {
+            return origin;
+        }
+
+        public int getExecutions() {
+            return executions;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return executions + "x " + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "ms " + command + " at " + origin;
+        }
+    }
+
+    /**
+     * 工作单元的统计结果
+     */
+    public static class Report {
+        private final int executions;
+        private final List<Statement> repeated;
+        private final List<Statement> slow;
+
+        Report(int executions, List<Statement> repeated, List<Statement> slow) {
+            this.executions = executions;
+            this.repeated = Collections.unmodifiableList(repeated);
+            this.slow = Collections.unmodifiableList(slow);
+        }
+
+        public int getExecutions() {
+            return executions;
+        }
+
+        /**
+         * @return 疑似N+1的语句结构
+         */
+        public List<Statement> getRepeated() {
+            return repeated;
+        }
+
+        public List<Statement> getSlow() {
+            return slow;
+        }
+
+        public boolean isClean() {
+            return this.repeated.isEmpty() && this.slow.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder report = new StringBuilder("query report: ").append(this.executions).append(" statements");
+            for (Statement statement : this.repeated) {
+                report.append("\n N+1 ").append(statement);
+            }
+            for (Statement statement : this.slow) {
+                report.append("\n SLOW ").append(statement);
+            }
+            return report.toString();
+        }
+    }
+}
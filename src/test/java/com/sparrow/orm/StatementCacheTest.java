@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StatementCacheTest {
+    private final Set<Object> closed = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+    private PreparedStatement statement() {
+        return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] {PreparedStatement.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("close".equals(method.getName())) {
+                    closed.add(proxy);
+                    return null;
+                }
+                if ("isClosed".equals(method.getName())) {
+                    return closed.contains(proxy);
+                }
+                if ("hashCode".equals(method.getName())) {
+                    return System.identityHashCode(proxy);
+                }
+                if ("equals".equals(method.getName())) {
+                    return proxy == args[0];
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void registeredStatementIsReused() {
+        StatementCache cache = new StatementCache(null, 4);
+        PreparedStatement statement = this.statement();
+        cache.register(statement, "select 1", ResultSet.TYPE_FORWARD_ONLY, false);
+        Assert.assertTrue(cache.offer(statement));
+        Assert.assertSame(statement, cache.take("select 1", ResultSet.TYPE_FORWARD_ONLY, false));
+    }
+
+    @Test
+    public void unregisteredStatementIsRejected() {
+        StatementCache cache = new StatementCache(null, 4);
+        Assert.assertFalse(cache.offer(this.statement()));
+    }
+
+    @Test
+    public void closeReleasesCachedStatements() {
+        StatementCache cache = new StatementCache(null, 4);
+        PreparedStatement statement = this.statement();
+        cache.register(statement, "select 1", ResultSet.TYPE_FORWARD_ONLY, false);
+        cache.offer(statement);
+        cache.close();
+        Assert.assertTrue(this.closed.contains(statement));
+        Assert.assertNull(cache.take("select 1", ResultSet.TYPE_FORWARD_ONLY, false));
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EntityCacheTest {
+    @Test
+    public void putAfterInvalidationIsDropped() {
+        EntityCache<String> entityCache = new EntityCache<String>(16, 60000);
+        long version = entityCache.version();
+        //读库期间其他线程更新
+        entityCache.invalidate(1L);
+        entityCache.put(1L, "stale", version);
+        entityCache.put("name", "harry", "stale", version);
+        Assert.assertNull(entityCache.get(1L));
+        Assert.assertNull(entityCache.get("name", "harry"));
+
+        entityCache.put(1L, "fresh", entityCache.version());
+        Assert.assertEquals("fresh", entityCache.get(1L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ttlIsRequired() {
+        new EntityCache<String>(16, 0);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.cache;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class QueryCacheTest {
+    private static final String COMMAND = "select id,name from t_user where id=?";
+
+    private static ResultSet users(int... ids) throws SQLException {
+        RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(2);
+        metaData.setColumnName(1, "id");
+        metaData.setColumnType(1, Types.INTEGER);
+        metaData.setColumnName(2, "name");
+        metaData.setColumnType(2, Types.VARCHAR);
+        CachedRowSet rowSet = RowSetProvider.newFactory().createCachedRowSet();
+        rowSet.setMetaData(metaData);
+        //insertRow插在当前行之前 倒序插入保持顺序
+        for (int i = ids.length - 1; i >= 0; i--) {
+            rowSet.moveToInsertRow();
+            rowSet.updateInt(1, ids[i]);
+            rowSet.updateString(2, "user" + ids[i]);
+            rowSet.insertRow();
+            rowSet.moveToCurrentRow();
+        }
+        rowSet.beforeFirst();
+        return rowSet;
+    }
+
+    private static QueryCache.Key key(int id) {
+        return new QueryCache.Key(null, COMMAND, new Object[] {id});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidateOnWriteRequiresTtl() {
+        new QueryCache(1024 * 1024, 0, true);
+    }
+
+    @Test
+    public void cachedResultSurvivesReleaseOfPreviousReads() throws SQLException {
+        QueryCache queryCache = new QueryCache(1024 * 1024, 60000, true);
+        ResultSet first = queryCache.put(key(1), queryCache.snapshot(COMMAND), users(1, 2));
+        Assert.assertTrue(first.next());
+        first.close();
+
+        for (int i = 0; i < 2; i++) {
+            ResultSet hit = queryCache.get(key(1));
+            Assert.assertNotNull(hit);
+            Assert.assertTrue(hit.next());
+            Assert.assertEquals(1, hit.getInt(1));
+            Assert.assertEquals("user1", hit.getString(2));
+            Assert.assertTrue(hit.next());
+            Assert.assertEquals(2, hit.getInt("id"));
+            Assert.assertFalse(hit.next());
+            hit.close();
+        }
+    }
+
+    @Test
+    public void writeInvalidatesReadTables() throws SQLException {
+        QueryCache queryCache = new QueryCache(1024 * 1024, 60000, true);
+        queryCache.put(key(1), queryCache.snapshot(COMMAND), users(1)).close();
+        queryCache.invalidate("update t_other set name=? where id=?");
+        Assert.assertNotNull(queryCache.get(key(1)));
+
+        queryCache.invalidate("update `t_user` set name=? where id=?");
+        Assert.assertNull(queryCache.get(key(1)));
+    }
+
+    @Test
+    public void resultReadBeforeConcurrentWriteIsNotServed() throws SQLException {
+        QueryCache queryCache = new QueryCache(1024 * 1024, 60000, true);
+        QueryCache.Snapshot snapshot = queryCache.snapshot(COMMAND);
+        queryCache.invalidate("delete from t_user where id=?");
+        queryCache.put(key(1), snapshot, users(1)).close();
+        Assert.assertNull(queryCache.get(key(1)));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.query.elasticsearch;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ElasticBulkTest {
+    private ElasticStub stub;
+
+    private ElasticClient client;
+
+    @Before
+    public void start() throws IOException {
+        this.stub = new ElasticStub();
+        this.client = new ElasticClient(this.stub.url());
+    }
+
+    @After
+    public void stop() {
+        this.stub.stop();
+    }
+
+    @Test
+    public void requestIsNdjsonWithIndexPerAction() {
+        ElasticBulk bulk = new ElasticBulk()
+            .add("create", "t_user_1", 1L, Collections.singletonMap("name", "a"))
+            .add("update", "t_user_2", "2", Collections.singletonMap("doc", Collections.singletonMap("name", "b")))
+            .add("delete", "t_user_1", 3, null)
+            .add("index", "t_user_1", null, Collections.singletonMap("name", "c"));
+        this.stub.respond("{\"errors\":false,\"items\":[]}");
+        bulk.execute(this.client, "?refresh=true");
+
+        ElasticStub.Request request = this.stub.requests.get(0);
+        Assert.assertEquals("POST", request.method);
+        Assert.assertEquals("/_bulk?refresh=true", request.path);
+        Assert.assertTrue(request.contentType.startsWith("application/x-ndjson"));
+        Assert.assertEquals("{\"create\":{\"_index\":\"t_user_1\",\"_id\":\"1\"}}\n"
+            + "{\"name\":\"a\"}\n"
+            + "{\"update\":{\"_index\":\"t_user_2\",\"_id\":\"2\"}}\n"
+            + "{\"doc\":{\"name\":\"b\"}}\n"
+            + "{\"delete\":{\"_index\":\"t_user_1\",\"_id\":\"3\"}}\n"
+            + "{\"index\":{\"_index\":\"t_user_1\"}}\n"
+            + "{\"name\":\"c\"}\n", request.body);
+    }
+
+    @Test
+    public void itemResultsKeepRequestOrder() {
+        ElasticBulk bulk = new ElasticBulk();
+        for (int i = 0; i < 4; i++) {
+            bulk.add("create", "t_user", null, Collections.singletonMap("i", i));
+        }
+        this.stub.respond("{\"errors\":true,\"items\":["
+            + "{\"create\":{\"_id\":\"a\",\"status\":201,\"result\":\"created\"}},"
+            + "{\"create\":{\"_id\":\"b\",\"status\":409,\"error\":{\"type\":\"version_conflict_engine_exception\"}}},"
+            + "{\"create\":{\"_id\":\"c\",\"status\":200,\"result\":\"noop\"}},"
+            + "{\"create\":{\"_id\":\"d\",\"status\":400,\"error\":{\"type\":\"mapper_parsing_exception\"}}}]}");
+        List<Map<String, Object>> items = bulk.execute(this.client, "");
+        Assert.assertEquals(4, items.size());
+        Assert.assertEquals("a", items.get(0).get("_id"));
+        Assert.assertTrue(ElasticBulk.succeeded(items.get(0)));
+        Assert.assertFalse(ElasticBulk.succeeded(items.get(1)));
+        Assert.assertTrue(ElasticBulk.conflict(items.get(1)));
+        Assert.assertFalse(ElasticBulk.succeeded(items.get(2)));
+        Assert.assertFalse(ElasticBulk.succeeded(items.get(3)));
+        Assert.assertFalse(ElasticBulk.conflict(items.get(3)));
+    }
+
+    @Test
+    public void emptyBulkSendsNothing() {
+        Assert.assertTrue(new ElasticBulk().execute(this.client, "").isEmpty());
+        Assert.assertTrue(this.stub.requests.isEmpty());
+    }
+}
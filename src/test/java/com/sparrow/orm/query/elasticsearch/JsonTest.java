@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.query.elasticsearch;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JsonTest {
+    @Test
+    @SuppressWarnings("unchecked")
+    public void roundTrip() {
+        Map<String, Object> document = new LinkedHashMap<String, Object>();
+        document.put("id", 9007199254740993L);
+        document.put("name", "a\"b\\c\n\t\u0001中文");
+        document.put("price", new BigDecimal("12.50"));
+        document.put("enabled", true);
+        document.put("tags", Arrays.asList("x", null, 3L));
+        document.put("big", new BigInteger("123456789012345678901234567890"));
+        document.put("empty", new LinkedHashMap<String, Object>());
+        Map<String, Object> parsed = (Map<String, Object>) Json.parse(Json.toJson(document));
+        Assert.assertEquals(document, parsed);
+        Assert.assertEquals(Json.toJson(document), Json.toJson(parsed));
+    }
+
+    @Test
+    public void dateAsEpochMillisAndEnumAsName() {
+        Map<String, Object> document = new LinkedHashMap<String, Object>();
+        document.put("time", new Date(1700000000000L));
+        document.put("unit", Thread.State.NEW);
+        document.put("ids", new int[] {1, 2});
+        Assert.assertEquals("{\"time\":1700000000000,\"unit\":\"NEW\",\"ids\":[1,2]}", Json.toJson(document));
+    }
+
+    @Test
+    public void nonFiniteNumbersAreWrittenAsNull() {
+        List<Object> values = Arrays.<Object>asList(Double.NaN, Double.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, 1.5d);
+        Assert.assertEquals("[null,null,null,1.5]", Json.toJson(values));
+        Assert.assertEquals(Arrays.asList(null, null, null, new BigDecimal("1.5")), Json.parse(Json.toJson(values)));
+    }
+
+    @Test
+    public void parseWhitespaceAndUnicodeEscape() {
+        Assert.assertEquals(Arrays.asList("\u4e2d", -1L, new BigDecimal("2E+3")), Json.parse(" [ \"\\u4e2d\" , -1 , 2e3 ] "));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedObjectIsRejected() {
+        Json.parse("{\"a\":1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedEscapeIsRejected() {
+        Json.parse("\"\\u12");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void trailingContentIsRejected() {
+        Json.parse("{} {}");
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sparrow.orm.query.elasticsearch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SearchHitsTest {
+    private ElasticStub stub;
+
+    private ElasticClient client;
+
+    @Before
+    public void start() throws IOException {
+        this.stub = new ElasticStub();
+        this.client = new ElasticClient(this.stub.url());
+    }
+
+    @After
+    public void stop() {
+        this.stub.stop();
+    }
+
+    /**
+     * 命中id从start开始 sort值为id
+     */
+    private static String hits(int start, int count) {
+        List<Object> hits = new ArrayList<Object>();
+        for (int id = start; id < start + count; id++) {
+            Map<String, Object> hit = new LinkedHashMap<String, Object>();
+            hit.put("_id", String.valueOf(id));
+            hit.put("_source", Collections.singletonMap("id", id));
+            hit.put("sort", Collections.singletonList(id));
+            hits.add(hit);
+        }
+        return Json.toJson(Collections.singletonMap("hits", Collections.singletonMap("hits", hits)));
+    }
+
+    private static Map<String, Object> body() {
+        Map<String, Object> body = new LinkedHashMap<String, Object>();
+        body.put("query", Collections.singletonMap("match_all", Collections.emptyMap()));
+        body.put("sort", Collections.singletonList(Collections.singletonMap("id", "asc")));
+        return body;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Long> ids(SearchHits searchHits) {
+        List<Long> ids = new ArrayList<Long>();
+        while (searchHits.hasNext()) {
+            ids.add((Long) ((Map<String, Object>) searchHits.next().get("_source")).get("id"));
+        }
+        return ids;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> request(int i) {
+        return (Map<String, Object>) Json.parse(this.stub.requests.get(i).body);
+    }
+
+    @Test
+    public void pageInsideWindowUsesFromSize() {
+        this.stub.respond(hits(21, 5));
+        List<Long> ids = ids(new SearchHits(this.client, "/t_user", body(), 20, 5, 10000, 1000));
+        Assert.assertEquals(Arrays.asList(21L, 22L, 23L, 24L, 25L), ids);
+        Assert.assertEquals(1, this.stub.requests.size());
+        Assert.assertEquals("/t_user/_search", this.stub.requests.get(0).path);
+        Assert.assertEquals(20L, this.request(0).get("from"));
+        Assert.assertEquals(5L, this.request(0).get("size"));
+        Assert.assertNull(this.request(0).get("search_after"));
+    }
+
+    @Test
+    public void unlimitedReadFollowsSearchAfter() {
+        this.stub.respond(hits(1, 3)).respond(hits(4, 3)).respond(hits(7, 1));
+        List<Long> ids = ids(new SearchHits(this.client, "/t_user", body(), 0, -1, 10000, 3));
+        Assert.assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L), ids);
+        Assert.assertEquals(3, this.stub.requests.size());
+        Assert.assertNull(this.request(0).get("search_after"));
+        Assert.assertEquals(Collections.singletonList(3L), this.request(1).get("search_after"));
+        Assert.assertEquals(Collections.singletonList(6L), this.request(2).get("search_after"));
+        Assert.assertNull(this.request(2).get("from"));
+    }
+
+    @Test
+    public void offsetBeyondWindowIsSkippedWithSearchAfter() {
+        //offset 4 + limit 2 超过窗口5 逐页读取并跳过前4条
+        this.stub.respond(hits(1, 3)).respond(hits(4, 3));
+        List<Long> ids = ids(new SearchHits(this.client, "/t_user", body(), 4, 2, 5, 3));
+        Assert.assertEquals(Arrays.asList(5L, 6L), ids);
+        Assert.assertEquals(2, this.stub.requests.size());
+        Assert.assertNull(this.request(0).get("from"));
+        Assert.assertEquals(Collections.singletonList(3L), this.request(1).get("search_after"));
+    }
+
+    @Test
+    public void emptyResultStopsPaging() {
+        this.stub.respond(hits(0, 0));
+        Assert.assertTrue(ids(new SearchHits(this.client, "/t_user*", body(), 0, -1, 10000, 100)).isEmpty());
+        Assert.assertEquals("/t_user*/_search", this.stub.requests.get(0).path);
+        Assert.assertEquals(1, this.stub.requests.size());
+    }
+}